@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+import org.jboss.spec.jsr373.apiexample.resource.objects.ManagedObjectType;
+
+/**
+ * Shared set up for the benchmarks.
+ */
+class BenchmarkSupport {
+    static final String ROOT = UrlUtil.Factory.SERVLET_ROOT_URL.toExternalForm();
+
+    /**
+     * Creates the topology used by the benchmarks. Each server accounts for roughly 550 instances.
+     *
+     * @param servers the number of servers
+     * @return the topology
+     */
+    static TopologyConfig createTopology(int servers) {
+        return TopologyConfig.createBuilder()
+                .setServers(servers)
+                .setJvmsPerServer(2)
+                .setApplications(10)
+                .setModulesPerApplication(6)
+                .setBeansPerModule(16)
+                .setServletsPerModule(4)
+                .setResources(4)
+                .build();
+    }
+
+    /**
+     * A {@code UrlUtil} which creates the same paths as the servlet one, but throws away everything written so that only
+     * the cost of producing the output is measured. Since the templates are static, only one generator may be created
+     * per JVM, so the benchmarks must be run forked.
+     */
+    static class DiscardingUrlUtil implements UrlUtil {
+        @Override
+        public String createTemplatePath(ManagedObjectType resourceType) throws IOException {
+            return ("/templates/" + resourceType.getName().toLowerCase(Locale.ENGLISH)).intern();
+        }
+
+        @Override
+        public String createInstancePath(String attributeName, String parentPath, String name) throws IOException {
+            final String parent = parentPath == null ? "" : parentPath;
+            return (parent + "/" + attributeName + "/" + Factory.escape(name)).intern();
+        }
+
+        @Override
+        public String createStatisticsPath(String instancePath) throws IOException {
+            return (instancePath + "/statistics").intern();
+        }
+
+        @Override
+        public String toHref(String path) {
+            return ROOT.concat(path);
+        }
+
+        @Override
+        public PrintWriter getWriter(String path) throws IOException {
+            return new PrintWriter(NullWriter.INSTANCE);
+        }
+
+        @Override
+        public List<String> getAllTemplatePaths() {
+            return null;
+        }
+
+        @Override
+        public List<String> getAllInstancePaths() {
+            return null;
+        }
+    }
+
+    private static class NullWriter extends Writer {
+        static final NullWriter INSTANCE = new NullWriter();
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@code ResourceInstance.Builder.build()}, which validates every attribute value against the template and
+ * creates the instance tree. A fresh set of builders is needed for every invocation since a builder caches what it
+ * built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BuildBenchmark {
+    @Param({"1", "10", "100"})
+    int servers;
+
+    private ExampleGenerator generator;
+    private ResourceInstance.Builder root;
+
+    @Setup(Level.Trial)
+    public void setupGenerator() throws Exception {
+        generator = new ExampleGenerator(new BenchmarkSupport.DiscardingUrlUtil(), BenchmarkSupport.createTopology(servers));
+    }
+
+    @Setup(Level.Invocation)
+    public void setupBuilders() throws Exception {
+        root = generator.createInstanceBuilders();
+    }
+
+    @Benchmark
+    public ResourceInstance build() throws Exception {
+        return root.build();
+    }
+}
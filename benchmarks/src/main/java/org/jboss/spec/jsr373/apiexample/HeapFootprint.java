@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.spec.jsr373.apiexample;
+
+import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
+
+/**
+ * Measures the heap retained by the instance tree (and by the builders it is built from) for the benchmark topology.
+ * This is not a JMH benchmark, since JMH measures time and allocation rather than what stays reachable. Run it with
+ * <pre>
+ *     java -XX:+UseSerialGC -cp target/benchmarks.jar org.jboss.spec.jsr373.apiexample.HeapFootprint [servers]
+ * </pre>
+ */
+public class HeapFootprint {
+    //Keeps the instances reachable
+    private static Object retained;
+
+    public static void main(String[] args) throws Exception {
+        final int servers = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        final TopologyConfig topology = BenchmarkSupport.createTopology(servers);
+        final ExampleGenerator generator = new ExampleGenerator(new BenchmarkSupport.DiscardingUrlUtil(), topology);
+
+        final long base = usedHeap();
+        ResourceInstance.Builder root = generator.createInstanceBuilders();
+        final long builders = usedHeap() - base;
+
+        retained = root.build();
+        final long both = usedHeap() - base;
+        //The instances do not reference the builders, so this leaves only the instance tree
+        root = null;
+        final long instances = usedHeap() - base;
+
+        final long count = topology.getInstanceCount();
+        System.out.println(topology);
+        System.out.println("instances:                  " + count);
+        System.out.println("builders (bytes):           " + builders);
+        System.out.println("builders+instances (bytes): " + both);
+        System.out.println("instances (bytes):          " + instances);
+        System.out.println("bytes per instance:         " + instances / count);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        //Keep collecting until nothing more is freed
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            final long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+}
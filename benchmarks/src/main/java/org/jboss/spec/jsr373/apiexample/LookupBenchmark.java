@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.RouteTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures looking up documents in the published {@code ServletUrlRegistry}, cycling through all the instances and
+ * their collections, and dispatching the instance paths with the {@code RouteTrie} like the servlet does. As in the servlet, each lookup normalises a path which is not the interned instance held by the
+ * registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark {
+    @Param({"1", "10", "100"})
+    int servers;
+
+    private UrlUtil.ServletUrlRegistry registry;
+    private RouteTrie routes;
+    private String[] instancePaths;
+    private String[] collectionPaths;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        registry = new UrlUtil.ServletUrlRegistry();
+        UrlUtil urlUtil = UrlUtil.Factory.createServletInstance(registry);
+        new ExampleGenerator(urlUtil, BenchmarkSupport.createTopology(servers)).generate();
+        registry.publish();
+        routes = RouteTrie.compile(ResourceTemplate.getAllTemplates());
+
+        List<String> paths = urlUtil.getAllInstancePaths();
+        instancePaths = new String[paths.size()];
+        collectionPaths = new String[paths.size()];
+        for (int i = 0; i < instancePaths.length; i++) {
+            String path = paths.get(i);
+            //Copy the path, like one coming from a request
+            instancePaths[i] = new String(path.toCharArray());
+            collectionPaths[i] = path.substring(0, path.lastIndexOf('/'));
+            //Render the collection up front, so we measure the lookup
+            registry.getCollection(collectionPaths[i]);
+        }
+    }
+
+    @Benchmark
+    public Document instance(Cursor cursor) {
+        return registry.getDocument(UrlUtil.Factory.normalisePath(instancePaths[next(cursor)]));
+    }
+
+    @Benchmark
+    public Document collection(Cursor cursor) {
+        return registry.getCollection(UrlUtil.Factory.normalisePath(collectionPaths[next(cursor)]));
+    }
+
+    @Benchmark
+    public Document dispatch(Cursor cursor) {
+        final String path = UrlUtil.Factory.normalisePath(instancePaths[next(cursor)]);
+        final RouteTrie.Match route = routes.match(path);
+        return route.getKind() == RouteTrie.Kind.INSTANCE ? registry.getDocument(path) : null;
+    }
+
+    private int next(Cursor cursor) {
+        int index = cursor.index;
+        cursor.index = index + 1 == instancePaths.length ? 0 : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A document held by a {@link DocumentRegistry}. The json is UTF-8 encoded, compressed and hashed at most once so that
+ * requests for it only need to copy the bytes to the response. For an immutable document that is done up front. A
+ * document which may get replaced, such as a live one rendered again whenever its values change, is only compressed
+ * once a client asks for gzip and only hashed once its entity tag is needed, so that versions nobody fetches cost
+ * nothing more than rendering them. The bytes are either on the heap, or a slice of a {@link PackedArchive} which is
+ * mapped into memory. Clients which would rather not parse json can ask for the {@link Format#DMR} format instead,
+ * which is created from the json the first time it is needed.
+ */
+public class Document {
+    //The size of the chunks a document which is not on the heap gets copied to the response in
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Encoded json;
+    private final boolean immutable;
+    //Any thread creating these creates the same value, so there is no need to lock out the others
+    private volatile String hash;
+    private volatile Encoded dmr;
+
+    Document(byte[] json, boolean immutable) {
+        this.json = new Encoded(json, immutable);
+        this.hash = immutable ? hash(json) : null;
+        this.immutable = immutable;
+    }
+
+    /**
+     * Creates a document which may get replaced, with an entity tag worked out by the caller rather than from the
+     * bytes.
+     *
+     * @param json the json
+     * @param hash 40 hexadecimal characters which differ for any two versions of the document at the same path
+     */
+    Document(byte[] json, String hash) {
+        this.json = new Encoded(json, false);
+        this.hash = hash;
+        this.immutable = false;
+    }
+
+    Document(ByteBuffer json, ByteBuffer gzippedJson, ByteBuffer dmr, ByteBuffer gzippedDmr, String hash, boolean immutable) {
+        this.json = new Encoded(json, gzippedJson);
+        this.dmr = new Encoded(dmr, gzippedDmr);
+        this.hash = hash;
+        this.immutable = immutable;
+    }
+
+    /**
+     * Gets the UTF-8 encoded json. If the json is on the heap the returned array is shared, so it must not be
+     * modified.
+     *
+     * @return the json
+     */
+    public byte[] getJson() {
+        return toArray(json.bytes);
+    }
+
+    /**
+     * Gets the gzip compressed json. If the compressed json is on the heap the returned array is shared, so it must
+     * not be modified.
+     *
+     * @return the compressed json, or {@code null} if compressing does not make the document any smaller
+     */
+    public byte[] getGzipped() {
+        final ByteBuffer gzipped = json.getGzipped();
+        return gzipped == null ? null : toArray(gzipped);
+    }
+
+    /**
+     * Gets the gzip compressed json like {@link #getGzipped()}, but without keeping it if it has not been created yet.
+     * This is for packing every document into an archive, which would otherwise leave all of them behind.
+     *
+     * @return the compressed json, or {@code null} if compressing does not make the document any smaller
+     */
+    byte[] compressJson() {
+        final ByteBuffer gzipped = json.gzipped;
+        if (gzipped != null) {
+            return gzipped == Encoded.NOT_SMALLER ? null : toArray(gzipped);
+        }
+        return gzip(getJson());
+    }
+
+    /**
+     * Gets the document in the {@link Format#DMR} format. If it is on the heap the returned array is shared, so it
+     * must not be modified.
+     *
+     * @return the encoded document
+     */
+    public byte[] getDmr() {
+        return toArray(dmr().bytes);
+    }
+
+    /**
+     * Gets the document in the {@link Format#DMR} format and the gzip compressed version of that, without keeping
+     * them on the heap if they have not been created yet. This is for packing every document into an archive, which
+     * would otherwise leave the DMR of all of them behind.
+     *
+     * @return the encoded document, and the compressed one or {@code null} if compressing does not make it any smaller
+     */
+    byte[][] encodeDmr() {
+        Encoded dmr = this.dmr;
+        if (dmr == null) {
+            dmr = createDmr();
+        }
+        final ByteBuffer gzipped = dmr.getGzipped();
+        return new byte[][] {toArray(dmr.bytes), gzipped == null ? null : toArray(gzipped)};
+    }
+
+    /**
+     * Whether there is a gzip compressed version of the document in a format, i.e. whether compressing it made it
+     * any smaller.
+     *
+     * @param format the format
+     * @return {@code true} if there is a compressed version
+     */
+    public boolean isGzipped(Format format) {
+        return get(format).getGzipped() != null;
+    }
+
+    /**
+     * Gets the length of the document in a format.
+     *
+     * @param format the format
+     * @param gzipped whether to get the length of the compressed version
+     * @return the length in bytes
+     */
+    public int getLength(Format format, boolean gzipped) {
+        return get(format).get(gzipped).remaining();
+    }
+
+    /**
+     * Writes the document in a format, without copying it to the heap first.
+     *
+     * @param out the stream to write to
+     * @param format the format
+     * @param gzipped whether to write the compressed version
+     */
+    public void writeTo(OutputStream out, Format format, boolean gzipped) throws IOException {
+        final ByteBuffer bytes = get(format).get(gzipped);
+        if (bytes.hasArray()) {
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            return;
+        }
+        final ByteBuffer source = bytes.duplicate();
+        final byte[] chunk = new byte[Math.min(CHUNK_SIZE, source.remaining())];
+        while (source.hasRemaining()) {
+            final int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Gets the strong entity tag of the json, including the quotes.
+     *
+     * @return the entity tag
+     */
+    public String getETag() {
+        return getETag(Format.JSON, false);
+    }
+
+    /**
+     * Gets the strong entity tag of the gzip compressed json, including the quotes. This must differ from
+     * {@link #getETag()} since the two representations are not byte for byte the same.
+     *
+     * @return the entity tag
+     */
+    public String getGzippedETag() {
+        return getETag(Format.JSON, true);
+    }
+
+    /**
+     * Gets the strong entity tag of the document in a format, including the quotes. Each format and compression
+     * has its own tag, since they are not byte for byte the same.
+     *
+     * @param format the format
+     * @param gzipped whether to get the tag of the compressed version
+     * @return the entity tag
+     */
+    public String getETag(Format format, boolean gzipped) {
+        return '"' + getHash() + format.tagSuffix + (gzipped ? "-gzip\"" : "\"");
+    }
+
+    /**
+     * Whether the document stays the same for as long as the application is deployed, as is the case for templates.
+     *
+     * @return {@code true} if the document is immutable
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    String getHash() {
+        String hash = this.hash;
+        if (hash == null) {
+            hash = hash(getJson());
+            this.hash = hash;
+        }
+        return hash;
+    }
+
+    private Encoded get(Format format) {
+        return format == Format.JSON ? json : dmr();
+    }
+
+    private Encoded dmr() {
+        Encoded dmr = this.dmr;
+        if (dmr == null) {
+            dmr = createDmr();
+            this.dmr = dmr;
+        }
+        return dmr;
+    }
+
+    private Encoded createDmr() {
+        final ModelNode node = ModelNode.fromJSONString(new String(getJson(), StandardCharsets.UTF_8));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(json.bytes.remaining());
+        try {
+            node.writeExternal(out);
+        } catch (IOException e) {
+            //Can't happen with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return new Encoded(out.toByteArray(), immutable);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static String hash(byte[] bytes) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            //Every JRE must support SHA-1
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            //Can't happen with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return out.size() < bytes.length ? out.toByteArray() : null;
+    }
+
+    /**
+     * The formats a document can be served in.
+     */
+    public enum Format {
+        /** UTF-8 encoded json */
+        JSON("application/json; charset=utf-8", ""),
+        /**
+         * The binary DMR encoding written by {@link ModelNode#writeExternal(OutputStream)}, which can be read with
+         * {@link ModelNode#readExternal(java.io.InputStream)} much faster than json can be parsed. This is not the
+         * base64 encoded {@code application/dmr-encoded} used by the WildFly http management interface, which is
+         * bigger than the json and takes as long to read.
+         */
+        DMR("application/dmr", "-dmr");
+
+        private final String contentType;
+        private final String tagSuffix;
+
+        Format(String contentType, String tagSuffix) {
+            this.contentType = contentType;
+            this.tagSuffix = tagSuffix;
+        }
+
+        /**
+         * Gets the media type of the format, including any parameters.
+         *
+         * @return the media type
+         */
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    private static class Encoded {
+        //Stands for compressing not having made the bytes any smaller
+        private static final ByteBuffer NOT_SMALLER = ByteBuffer.allocate(0);
+
+        private final ByteBuffer bytes;
+        //Null until compressed. Any thread compressing creates the same bytes, so there is no need to lock out the others
+        private volatile ByteBuffer gzipped;
+
+        Encoded(byte[] bytes, boolean compress) {
+            this.bytes = ByteBuffer.wrap(bytes);
+            if (compress) {
+                getGzipped();
+            }
+        }
+
+        Encoded(ByteBuffer bytes, ByteBuffer gzipped) {
+            this.bytes = bytes;
+            this.gzipped = gzipped == null ? NOT_SMALLER : gzipped;
+        }
+
+        /**
+         * @return the compressed bytes, or {@code null} if compressing does not make them any smaller
+         */
+        ByteBuffer getGzipped() {
+            ByteBuffer gzipped = this.gzipped;
+            if (gzipped == null) {
+                final byte[] compressed = gzip(toArray(bytes));
+                gzipped = compressed == null ? NOT_SMALLER : ByteBuffer.wrap(compressed);
+                this.gzipped = gzipped;
+            }
+            return gzipped == NOT_SMALLER ? null : gzipped;
+        }
+
+        ByteBuffer get(boolean gzipped) {
+            return gzipped ? getGzipped() : bytes;
+        }
+    }
+}
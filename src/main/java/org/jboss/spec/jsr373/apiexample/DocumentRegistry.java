@@ -0,0 +1,46 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+/**
+ * Where the servlet looks up the documents it serves. The paths are normalised, see
+ * {@link UrlUtil.Factory#normalisePath(String)}.
+ */
+public interface DocumentRegistry {
+    /**
+     * Gets the document for a path.
+     *
+     * @param path the normalised path of the document
+     * @return the document, or {@code null} if there is none
+     */
+    Document getDocument(String path);
+
+    /**
+     * Gets the collection for a path, i.e. the list of the documents whose path is the collection path plus one
+     * element.
+     *
+     * @param path the normalised path of the collection
+     * @return the collection, which is an empty list if it has no entries
+     */
+    Document getCollection(String path);
+}
@@ -24,9 +24,11 @@ package org.jboss.spec.jsr373.apiexample;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
 import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.Statistics;
 import org.jboss.spec.jsr373.apiexample.resource.objects.AppClientModuleType;
 import org.jboss.spec.jsr373.apiexample.resource.objects.ApplicationType;
 import org.jboss.spec.jsr373.apiexample.resource.objects.DomainType;
@@ -46,7 +48,17 @@ import org.jboss.spec.jsr373.apiexample.resource.objects.WebModuleType;
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 public class ExampleGenerator {
+    /** Set this system property to {@code true} to serialize the instances using the common fork/join pool */
+    public static final String PARALLEL_SERIALIZATION = "jsr.373.serialize.parallel";
+    /**
+     * The version of what gets generated, which is part of the {@link #getFingerprint() fingerprint}. Bump this
+     * whenever a change means that the same inputs generate different documents, so that snapshots of the old ones
+     * do not get reloaded.
+     */
+    static final int GENERATOR_VERSION = 7;
+
     private final UrlUtil urlUtil;
+    private final TopologyConfig topology;
 
     private final ResourceTemplate domain;
     private final ResourceTemplate server;
@@ -63,10 +75,23 @@ public class ExampleGenerator {
     private final ResourceTemplate javaMailResource;
     private final ResourceTemplate jndiResource;
 
+    //The web module and servlet serving the model, if it is being served
+    private String managementModuleName;
+    private String managementServletName;
+    private ResourceInstance.Builder managementServletBuilder;
 
 
     public ExampleGenerator(UrlUtil urlUtil) throws IOException {
+        this(urlUtil, null);
+    }
+
+    /**
+     * @param urlUtil the url util
+     * @param topology the size of the synthetic topology to generate, or {@code null} to generate the hand-written example
+     */
+    public ExampleGenerator(UrlUtil urlUtil, TopologyConfig topology) throws IOException {
         this.urlUtil = urlUtil;
+        this.topology = topology;
         //Set up all the templates
         domain = ResourceTemplate.createTemplate(urlUtil, DomainType.INSTANCE);
         server = ResourceTemplate.createTemplate(urlUtil, ServerType.INSTANCE);
@@ -84,15 +109,124 @@ public class ExampleGenerator {
         jndiResource = ResourceTemplate.createTemplate(urlUtil, JndiResourceType.INSTANCE);
     }
 
+    /**
+     * Gets a fingerprint of everything which decides what gets generated, i.e. the version of the generator, the
+     * topology and the root url. If two generators have the same fingerprint they generate the same documents.
+     *
+     * @return the fingerprint
+     */
+    public String getFingerprint() {
+        return "generator-version=" + GENERATOR_VERSION + ";topology=" + (topology == null ? "example" : topology) +
+                ";root=" + urlUtil.toHref("") +
+                (managementModuleName == null ? "" : ";management=" + managementModuleName + "/" + managementServletName);
+    }
+
+    /**
+     * Adds the web module and servlet which serve the model to the first server, so that the statistics of the
+     * servlet can be read like those of any other. The first jvm of the server stands for the one the servlet runs in,
+     * so it is the only one with live values. Call this before generating.
+     *
+     * @param moduleName the name of the web module, e.g. {@code jsr373example.war}
+     * @param servletName the name of the servlet
+     */
+    public void setManagementServlet(String moduleName, String servletName) {
+        if (managementServletBuilder != null) {
+            throw new IllegalStateException("The instances have already been created");
+        }
+        this.managementModuleName = moduleName;
+        this.managementServletName = servletName;
+    }
+
+    /**
+     * Gets the statistics to record the requests to the management servlet in, once the instances have been
+     * generated.
+     *
+     * @return the statistics
+     * @see #setManagementServlet(String, String)
+     */
+    public Statistics getManagementServletStatistics() {
+        if (managementServletBuilder == null) {
+            throw new IllegalStateException("There is no management servlet");
+        }
+        return managementServletBuilder.getStatistics();
+    }
+
+    /**
+     * Generates just the management servlet and its statistics, for when all the other documents come from an
+     * archive. The documents are the same as the ones {@link #generate()} writes for it. The statistics of its parents
+     * get written as well, since their roll-ups include the servlet; as the other instances are not generated, the
+     * roll-ups only include the servlet, which is the only instance recording anything anyway. So does the jvm the
+     * servlet runs in, since the values of its live attributes can not come from the archive either.
+     *
+     * @see #setManagementServlet(String, String)
+     */
+    public void generateManagementServlet() throws Exception {
+        if (managementModuleName == null) {
+            throw new IllegalStateException("There is no management servlet");
+        }
+        //The parents are only created to get the same paths, their documents do not get written apart from the jvm's
+        ResourceInstance.Builder domainMainBuilder = domain.createRootInstanceBuilder("main");
+        ResourceInstance.Builder serverBuilder = domainMainBuilder.createChildBuilder(server, getFirstServerName());
+        ResourceInstance.Builder jvmBuilder = serverBuilder.createChildBuilder(jvm, getFirstJvmName());
+        ResourceInstance.Builder moduleBuilder = addManagementServlet(serverBuilder, jvmBuilder);
+        managementServletBuilder.complete();
+        jvmBuilder.complete();
+        moduleBuilder.completeStatistics();
+        serverBuilder.completeStatistics();
+        domainMainBuilder.completeStatistics();
+    }
+
     public void generate() throws Exception {
 
         //Serialize all the templates
         ResourceTemplate.serializeTemplates();
 
         //Now create the instances
+        ResourceInstance.Builder domainMainBuilder = createInstanceBuilders();
+
+        //Build and serialize the root instance which will also do the same for the children
+        ResourceInstance domainMain = domainMainBuilder.build();
+        if (Boolean.getBoolean(PARALLEL_SERIALIZATION)) {
+            domainMain.serialize(ForkJoinPool.commonPool());
+        } else {
+            domainMain.serialize();
+        }
+    }
+
+    /**
+     * Generates the templates and instances like {@link #generate()}, but serializes each subtree of instances as soon
+     * as it has been populated and then lets go of it, rather than building the whole model before serializing it. The
+     * peak heap is bounded by the depth and fan-out of the model rather than by its total size, which is what you want
+     * when writing very large synthetic topologies to file.
+     *
+     * @see ResourceInstance.Builder#complete()
+     */
+    public void generateStreaming() throws Exception {
+        ResourceTemplate.serializeTemplates();
+
+        //Each server, application and module is completed as soon as it is populated, the rest gets done here
+        ResourceInstance.Builder domainMainBuilder = createInstanceBuilders(true);
+        domainMainBuilder.complete();
+    }
+
+    /**
+     * Creates the builders for all the instances, without building or serializing them.
+     *
+     * @return the builder for the root domain instance
+     */
+    public ResourceInstance.Builder createInstanceBuilders() throws Exception {
+        return createInstanceBuilders(false);
+    }
+
+    private ResourceInstance.Builder createInstanceBuilders(boolean streaming) throws Exception {
+        //The hand-written example is small enough that there is nothing to gain from completing it bit by bit
+        return topology == null ? createExample() : createSynthetic(topology, streaming);
+    }
+
+    private ResourceInstance.Builder createExample() throws Exception {
         ResourceInstance.Builder domainMainBuilder = domain.createRootInstanceBuilder("main");
-        ResourceInstance.Builder serverOneBuilder = domainMainBuilder.createChildBuilder(server, "one");
-        ResourceInstance.Builder jvmOneBuilder = serverOneBuilder.createChildBuilder(jvm, "one");
+        ResourceInstance.Builder serverOneBuilder = domainMainBuilder.createChildBuilder(server, getFirstServerName());
+        ResourceInstance.Builder jvmOneBuilder = serverOneBuilder.createChildBuilder(jvm, getFirstJvmName());
         ResourceInstance.Builder jvmTwoBuilder = serverOneBuilder.createChildBuilder(jvm, "two");
 
         //Add some top-level deployments
@@ -103,6 +237,9 @@ public class ExampleGenerator {
                 serverOneBuilder.createChildBuilder(application, "application-one.ear");
         addDeployedObjects(applicationOneBuilder, jvmOneBuilder);
 
+        if (managementModuleName != null) {
+            addManagementServlet(serverOneBuilder, jvmOneBuilder);
+        }
 
         //Add the resources to the server
         serverOneBuilder.createChildBuilder(javaMailResource, "default-mail");
@@ -110,12 +247,102 @@ public class ExampleGenerator {
         serverOneBuilder.createChildBuilder(jndiResource, "java://blah.one");
         serverOneBuilder.createChildBuilder(jndiResource, "java://blah.two");
 
+        return domainMainBuilder;
+    }
 
-        //Build and serialize the root instance which will also do the same for the children
-        ResourceInstance domainMain = domainMainBuilder.build();
-        domainMain.serialize();
+    private ResourceInstance.Builder createSynthetic(TopologyConfig topology, boolean streaming) throws Exception {
+        ResourceInstance.Builder domainMainBuilder = domain.createRootInstanceBuilder("main");
+        for (int s = 1; s <= topology.getServers(); s++) {
+            ResourceInstance.Builder serverBuilder = domainMainBuilder.createChildBuilder(server, "server-" + s);
+            ResourceInstance.Builder[] jvmBuilders = new ResourceInstance.Builder[topology.getJvmsPerServer()];
+            for (int j = 0; j < jvmBuilders.length; j++) {
+                jvmBuilders[j] = serverBuilder.createChildBuilder(jvm, "jvm-" + (j + 1));
+            }
+            if (s == 1 && managementModuleName != null) {
+                final ResourceInstance.Builder managementModuleBuilder = addManagementServlet(serverBuilder, jvmBuilders[0]);
+                if (streaming) {
+                    managementModuleBuilder.complete();
+                }
+            }
+
+            for (int a = 1; a <= topology.getApplications(); a++) {
+                ResourceInstance.Builder applicationBuilder =
+                        serverBuilder.createChildBuilder(application, "application-" + a + ".ear");
+                for (int m = 0; m < topology.getModulesPerApplication(); m++) {
+                    //Spread the modules over the jvms, and cycle through the module types
+                    ResourceInstance.Builder jvmBuilder = jvmBuilders[(a + m) % jvmBuilders.length];
+                    ResourceInstance.Builder moduleBuilder;
+                    switch (m % 3) {
+                        case 0:
+                            moduleBuilder = addSyntheticWebModule(topology, applicationBuilder, jvmBuilder, "web-" + m + ".war");
+                            break;
+                        case 1:
+                            moduleBuilder = addSyntheticEjbModule(topology, applicationBuilder, jvmBuilder, "ejb-" + m + ".jar");
+                            break;
+                        default:
+                            moduleBuilder = applicationBuilder.createManagedObjectChildBuilder(appClient, "app-client-" + m + ".jar", jvmBuilder);
+                    }
+                    if (streaming) {
+                        moduleBuilder.complete();
+                    }
+                }
+                if (streaming) {
+                    applicationBuilder.complete();
+                }
+            }
 
+            for (int r = 1; r <= topology.getResources(); r++) {
+                if (r % 2 == 1) {
+                    serverBuilder.createChildBuilder(jndiResource, "java://resource-" + r);
+                } else {
+                    serverBuilder.createChildBuilder(javaMailResource, "mail-" + r);
+                }
+            }
+            if (streaming) {
+                serverBuilder.complete();
+            }
+        }
+        return domainMainBuilder;
+    }
+
+    private String getFirstServerName() {
+        return topology == null ? "one" : "server-1";
+    }
+
+    private String getFirstJvmName() {
+        return topology == null ? "one" : "jvm-1";
+    }
+
+    private ResourceInstance.Builder addManagementServlet(ResourceInstance.Builder serverBuilder,
+                                                          ResourceInstance.Builder jvmBuilder) throws IOException, URISyntaxException {
+        jvmBuilder.setLive();
+        ResourceInstance.Builder moduleBuilder =
+                serverBuilder.createManagedObjectChildBuilder(webModule, managementModuleName, jvmBuilder);
+        managementServletBuilder = moduleBuilder.createChildBuilder(servlet, managementServletName);
+        //Every request gets recorded, so the first one should not have to create the histograms
+        managementServletBuilder.getStatistics().createHistograms();
+        return moduleBuilder;
+    }
+
+    private ResourceInstance.Builder addSyntheticWebModule(TopologyConfig topology, ResourceInstance.Builder parentBuilder,
+                                       ResourceInstance.Builder jvmBuilder, String name) throws IOException, URISyntaxException {
+        ResourceInstance.Builder webModuleBuilder = parentBuilder.createManagedObjectChildBuilder(webModule, name, jvmBuilder);
+        for (int i = 1; i <= topology.getServletsPerModule(); i++) {
+            webModuleBuilder.createChildBuilder(servlet, "Servlet" + i);
+        }
+        return webModuleBuilder;
+    }
 
+    private ResourceInstance.Builder addSyntheticEjbModule(TopologyConfig topology, ResourceInstance.Builder parentBuilder,
+                                       ResourceInstance.Builder jvmBuilder, String name) throws IOException, URISyntaxException {
+        final ResourceTemplate[] beanTemplates =
+                {entityBean, messageDrivenBean, statefulSessionBean, statelessSessionBean};
+        ResourceInstance.Builder ejbModuleBuilder = parentBuilder.createManagedObjectChildBuilder(ejbModule, name, jvmBuilder);
+        for (int i = 0; i < topology.getBeansPerModule(); i++) {
+            ResourceTemplate beanTemplate = beanTemplates[i % beanTemplates.length];
+            ejbModuleBuilder.createChildBuilder(beanTemplate, beanTemplate.getResourceType().getName() + (i + 1));
+        }
+        return ejbModuleBuilder;
     }
 
     private void addDeployedObjects(ResourceInstance.Builder parentBuilder, ResourceInstance.Builder jvmBuilder) throws IOException, URISyntaxException {
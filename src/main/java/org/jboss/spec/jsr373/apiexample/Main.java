@@ -22,13 +22,55 @@
 
 package org.jboss.spec.jsr373.apiexample;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 public class Main {
+    /**
+     * Set this system property to the name of the web module which will serve the archive, so that the archive includes
+     * it and its servlet. Defaults to the one named after the context path of {@code jsr.373.servlet.root}, like a
+     * deployed war would be.
+     */
+    public static final String MANAGEMENT_MODULE = "jsr.373.management.module";
+    /** Set this system property to the name of the servlet which will serve the archive. Defaults to JSR373Servlet */
+    public static final String MANAGEMENT_SERVLET = "jsr.373.management.servlet";
+
     public static void main(String args[]) throws Exception {
+        final String archive = System.getProperty(PackedArchive.ARCHIVE);
+        if (archive != null) {
+            writeArchive(Paths.get(archive).toAbsolutePath());
+            return;
+        }
         UrlUtil urlUtil = UrlUtil.Factory.createFileInstance();
-        ExampleGenerator generator = new ExampleGenerator(urlUtil);
+        ExampleGenerator generator = new ExampleGenerator(urlUtil, TopologyConfig.fromSystemProperties());
+        //Files are written as the model is populated, so the whole model never needs to be in memory
+        generator.generateStreaming();
+        //Wait for the files to be written and swap them in for the previous ones
+        urlUtil.finish();
+    }
+
+    private static void writeArchive(Path archive) throws Exception {
+        //The documents are generated with the servlet urls, since the servlet is what serves the archive
+        UrlUtil.ServletUrlRegistry urlRegistry = new UrlUtil.ServletUrlRegistry();
+        UrlUtil urlUtil = UrlUtil.Factory.createServletInstance(urlRegistry);
+        ExampleGenerator generator = new ExampleGenerator(urlUtil, TopologyConfig.fromSystemProperties());
+        //The servlet only generates the documents of its own module and servlet, the rest need to link to them
+        generator.setManagementServlet(System.getProperty(MANAGEMENT_MODULE, getDefaultManagementModule()),
+                System.getProperty(MANAGEMENT_SERVLET, "JSR373Servlet"));
         generator.generate();
+        urlRegistry.publish();
+        PackedArchive.write(archive, urlRegistry, urlUtil.getAllTemplatePaths(), urlUtil.getAllInstancePaths(),
+                UrlUtil.Factory.SERVLET_ROOT_URL.toExternalForm(), generator.getFingerprint());
+        System.out.println("Archive is " + archive);
+    }
+
+    private static String getDefaultManagementModule() {
+        //The servlet is mapped to /contents under the context path
+        final String path = UrlUtil.Factory.SERVLET_ROOT_URL.getPath();
+        final String contextPath = path.substring(0, path.lastIndexOf('/'));
+        return (contextPath.isEmpty() ? "ROOT" : contextPath.substring(1)) + ".war";
     }
 }
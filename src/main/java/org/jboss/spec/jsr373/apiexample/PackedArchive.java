@@ -0,0 +1,507 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The whole site packed into a single file, which the servlet maps into memory and serves the documents from. Opening
+ * it takes the same time however big it is, the documents are not on the heap, and the page cache is shared by all the
+ * applications on the host which serve the same file. The servlet also uses it as a snapshot of the generated model
+ * which it can reload rather than generating the model again, as long as the archive's fingerprint of the generator
+ * and its inputs is the same as the current one.
+ * <p>
+ * All the numbers are big-endian ints, apart from the magic number. The file is laid out as follows:
+ * <ul>
+ *     <li>The header: the magic number (a long), the version, the CRC-32 of everything after the header's first 16
+ *     bytes, the number of documents, collections, templates and instances, the offsets of the document index, the
+ *     collection index and the listing, and the offset and length of the root url and of the fingerprint.</li>
+ *     <li>The document index and the collection index, whose entries are sorted on the UTF-8 bytes of their path
+ *     so that they can be binary searched. An entry is the offset and length of its path, of its json, of its gzip
+ *     compressed json, of its {@link Document.Format#DMR} version and of the gzip compressed version of that (with a
+ *     length of -1 if compressing did not make it any smaller), its flags and its 40 character hash.</li>
+ *     <li>The listing, which is the position in the document index of each template and then of each instance in the
+ *     order they were created in, for the index page.</li>
+ *     <li>The root url, the fingerprint, the paths and the document bodies.</li>
+ * </ul>
+ * The offsets are ints, so an archive can not be bigger than 2GB.
+ */
+public class PackedArchive implements DocumentRegistry {
+    /** Set this system property to the file to write the archive to, or to serve the documents from */
+    public static final String ARCHIVE = "jsr.373.archive";
+
+    //"JSR373PA"
+    private static final long MAGIC = 0x4a53523337335041L;
+    private static final int VERSION = 3;
+    //The magic number, the version and the checksum are not covered by the checksum
+    private static final int CHECKSUM_START = 16;
+    private static final int HEADER_SIZE = CHECKSUM_START + 11 * 4;
+    private static final int HASH_SIZE = 40;
+    private static final int ENTRY_SIZE = 11 * 4 + HASH_SIZE;
+    private static final int IMMUTABLE = 1;
+
+    private final ByteBuffer buffer;
+    private final int documentCount;
+    private final int collectionCount;
+    private final int templateCount;
+    private final int instanceCount;
+    private final int documentIndex;
+    private final int collectionIndex;
+    private final int listing;
+    private final String rootUrl;
+    private final String fingerprint;
+
+    private PackedArchive(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not an archive");
+        }
+        if (buffer.getInt(8) != VERSION) {
+            throw new IOException("Unsupported archive version " + buffer.getInt(8));
+        }
+        documentCount = buffer.getInt(16);
+        collectionCount = buffer.getInt(20);
+        templateCount = buffer.getInt(24);
+        instanceCount = buffer.getInt(28);
+        documentIndex = buffer.getInt(32);
+        collectionIndex = buffer.getInt(36);
+        listing = buffer.getInt(40);
+        //A truncated or corrupted header must not make the reads below fail with anything but an IOException
+        checkRange(documentIndex, (long) documentCount * ENTRY_SIZE, "document index");
+        checkRange(collectionIndex, (long) collectionCount * ENTRY_SIZE, "collection index");
+        checkRange(listing, ((long) templateCount + instanceCount) * 4, "listing");
+        rootUrl = readHeaderString(44, "root url");
+        fingerprint = readHeaderString(52, "fingerprint");
+    }
+
+    private String readHeaderString(int position, String name) throws IOException {
+        final int offset = buffer.getInt(position);
+        final int length = buffer.getInt(position + 4);
+        checkRange(offset, length, name);
+        return new String(getBytes(offset, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks that a range read from the archive lies within it.
+     *
+     * @throws IOException if the range does not lie within the archive
+     */
+    private void checkRange(int offset, long length, String name) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+            throw new IOException("The archive is corrupt, its " + name + " at " + offset + " with a length of " +
+                    length + " does not lie within its " + buffer.capacity() + " bytes");
+        }
+    }
+
+    /**
+     * Maps an archive into memory.
+     *
+     * @param file the archive
+     * @return the archive
+     */
+    public static PackedArchive open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too big to be an archive");
+            }
+            //The mapping stays valid once the channel is closed
+            return new PackedArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Packs everything which has been published by a registry into an archive. The archive is written to a temporary
+     * file which then replaces the file, so that anything which has the old archive mapped is not affected.
+     *
+     * @param file the file to write the archive to
+     * @param registry the registry
+     * @param templatePaths the paths of the templates, in the order they should be listed in
+     * @param instancePaths the paths of the instances, in the order they should be listed in
+     * @param rootUrl the root url which the hrefs in the documents start with
+     * @param fingerprint the fingerprint of the generator and its inputs, see
+     *                    {@link ExampleGenerator#getFingerprint()}
+     */
+    public static void write(Path file, UrlUtil.ServletUrlRegistry registry, List<String> templatePaths,
+                             List<String> instancePaths, String rootUrl, String fingerprint) throws IOException {
+        final List<Entry> documents = createEntries(registry.getPublishedDocumentPaths(), registry::getDocument);
+        final List<Entry> collections = createEntries(registry.getPublishedCollectionPaths(), registry::getCollection);
+        final byte[] root = rootUrl.getBytes(StandardCharsets.UTF_8);
+        final byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+
+        //Work out where everything goes
+        final int documentIndex = HEADER_SIZE;
+        final int collectionIndex = documentIndex + documents.size() * ENTRY_SIZE;
+        final int listing = collectionIndex + collections.size() * ENTRY_SIZE;
+        final int rootOffset = listing + (templatePaths.size() + instancePaths.size()) * 4;
+        final int fingerprintOffset = rootOffset + root.length;
+        long offset = fingerprintOffset + fingerprintBytes.length;
+        for (Entry entry : documents) {
+            offset = entry.placePath(offset);
+        }
+        for (Entry entry : collections) {
+            offset = entry.placePath(offset);
+        }
+        for (Entry entry : documents) {
+            offset = entry.placeBodies(offset);
+        }
+        for (Entry entry : collections) {
+            offset = entry.placeBodies(offset);
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The archive would be " + offset + " bytes, which is too big");
+        }
+
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            //The start of the header is written last, once the checksum of the rest is known
+            channel.position(CHECKSUM_START);
+            final CRC32 checksum = new CRC32();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 1 << 16));
+            out.writeInt(documents.size());
+            out.writeInt(collections.size());
+            out.writeInt(templatePaths.size());
+            out.writeInt(instancePaths.size());
+            out.writeInt(documentIndex);
+            out.writeInt(collectionIndex);
+            out.writeInt(listing);
+            out.writeInt(rootOffset);
+            out.writeInt(root.length);
+            out.writeInt(fingerprintOffset);
+            out.writeInt(fingerprintBytes.length);
+            for (Entry entry : documents) {
+                entry.writeIndexEntry(out);
+            }
+            for (Entry entry : collections) {
+                entry.writeIndexEntry(out);
+            }
+            final Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < documents.size(); i++) {
+                positions.put(new String(documents.get(i).path, StandardCharsets.UTF_8), i);
+            }
+            writeListing(out, positions, templatePaths);
+            writeListing(out, positions, instancePaths);
+            out.write(root);
+            out.write(fingerprintBytes);
+            for (Entry entry : documents) {
+                out.write(entry.path);
+            }
+            for (Entry entry : collections) {
+                out.write(entry.path);
+            }
+            for (Entry entry : documents) {
+                entry.writeBodies(out);
+            }
+            for (Entry entry : collections) {
+                entry.writeBodies(out);
+            }
+            out.flush();
+
+            final ByteBuffer start = ByteBuffer.allocate(CHECKSUM_START);
+            start.putLong(MAGIC);
+            start.putInt(VERSION);
+            start.putInt((int) checksum.getValue());
+            start.flip();
+            while (start.hasRemaining()) {
+                channel.write(start, start.position());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<Entry> createEntries(Collection<String> paths, Function<String, Document> lookup) {
+        final List<Entry> entries = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            entries.add(new Entry(path.getBytes(StandardCharsets.UTF_8), lookup.apply(path)));
+        }
+        Collections.sort(entries, (e1, e2) -> compare(e1.path, e2.path));
+        return entries;
+    }
+
+    private static void writeListing(DataOutputStream out, Map<String, Integer> positions, List<String> paths) throws IOException {
+        for (String path : paths) {
+            final Integer position = positions.get(path);
+            if (position == null) {
+                throw new IllegalStateException("No document has been published for " + path);
+            }
+            out.writeInt(position);
+        }
+    }
+
+    private static int compare(byte[] path1, byte[] path2) {
+        final int length = Math.min(path1.length, path2.length);
+        for (int i = 0; i < length; i++) {
+            final int diff = (path1[i] & 0xff) - (path2[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return path1.length - path2.length;
+    }
+
+    @Override
+    public Document getDocument(String path) {
+        final int entry = find(documentIndex, documentCount, path);
+        return entry < 0 ? null : toDocument(entry);
+    }
+
+    @Override
+    public Document getCollection(String path) {
+        final int entry = find(collectionIndex, collectionCount, path);
+        return entry < 0 ? UrlUtil.ServletUrlRegistry.EMPTY_LIST : toDocument(entry);
+    }
+
+    /**
+     * Checks the archive against its checksum, and that everything its indexes refer to lies within it. This reads the
+     * whole archive, so it is only worth doing for a file which might have been corrupted, such as a snapshot left
+     * behind by an earlier run.
+     *
+     * @throws IOException if the archive is corrupt
+     */
+    public void verify() throws IOException {
+        final CRC32 checksum = new CRC32();
+        final ByteBuffer covered = buffer.duplicate();
+        covered.position(CHECKSUM_START);
+        checksum.update(covered);
+        if ((int) checksum.getValue() != buffer.getInt(12)) {
+            throw new IOException("The archive is corrupt, its checksum does not match");
+        }
+        //A matching checksum does not mean the entries can be followed, if the archive was written wrongly
+        verifyIndex(documentIndex, documentCount, "document");
+        verifyIndex(collectionIndex, collectionCount, "collection");
+        for (int i = 0; i < templateCount + instanceCount; i++) {
+            final int position = buffer.getInt(listing + i * 4);
+            if (position < 0 || position >= documentCount) {
+                throw new IOException("The archive is corrupt, its listing refers to document " + position);
+            }
+        }
+    }
+
+    private void verifyIndex(int index, int count, String name) throws IOException {
+        for (int i = 0; i < count; i++) {
+            final int entry = index + i * ENTRY_SIZE;
+            checkRange(buffer.getInt(entry), buffer.getInt(entry + 4), name + " path");
+            //The bodies, which may have a length of -1 if they are not there
+            for (int position = entry + 8; position < entry + 40; position += 8) {
+                final int length = buffer.getInt(position + 4);
+                if (length != -1) {
+                    checkRange(buffer.getInt(position), length, name + " body");
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the fingerprint of the generator and the inputs the archive was generated with.
+     *
+     * @return the fingerprint
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Gets the paths of the templates, in the order they were created in.
+     *
+     * @return the paths
+     */
+    public List<String> getTemplatePaths() {
+        return getListing(0, templateCount);
+    }
+
+    /**
+     * Gets the paths of the instances, in the order they were created in.
+     *
+     * @return the paths
+     */
+    public List<String> getInstancePaths() {
+        return getListing(templateCount, instanceCount);
+    }
+
+    /**
+     * Renders the absolute url of a path, using the root url the archive was generated with.
+     *
+     * @param path the path
+     * @return the url
+     */
+    public String toHref(String path) {
+        return rootUrl.concat(path);
+    }
+
+    private List<String> getListing(int start, int count) {
+        final List<String> paths = new ArrayList<>(count);
+        for (int i = start; i < start + count; i++) {
+            final int entry = documentIndex + buffer.getInt(listing + i * 4) * ENTRY_SIZE;
+            paths.add(new String(getBytes(buffer.getInt(entry), buffer.getInt(entry + 4)), StandardCharsets.UTF_8));
+        }
+        return paths;
+    }
+
+    /**
+     * Binary searches an index, comparing the path with the bytes in the mapped buffer.
+     *
+     * @return the offset of the entry, or {@code -1} if there is none for the path
+     */
+    private int find(int index, int count, String path) {
+        final byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int entry = index + mid * ENTRY_SIZE;
+            final int diff = compare(entry, key);
+            if (diff < 0) {
+                low = mid + 1;
+            } else if (diff > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int entry, byte[] key) {
+        final int offset = buffer.getInt(entry);
+        final int length = buffer.getInt(entry + 4);
+        final int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            final int diff = (buffer.get(offset + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    private Document toDocument(int entry) {
+        final ByteBuffer json = slice(entry + 8);
+        final ByteBuffer gzippedJson = slice(entry + 16);
+        final ByteBuffer dmr = slice(entry + 24);
+        final ByteBuffer gzippedDmr = slice(entry + 32);
+        final boolean immutable = (buffer.getInt(entry + 40) & IMMUTABLE) != 0;
+        final String hash = new String(getBytes(entry + 44, HASH_SIZE), StandardCharsets.US_ASCII);
+        return new Document(json, gzippedJson, dmr, gzippedDmr, hash, immutable);
+    }
+
+    /**
+     * Slices the mapped buffer using the offset and length stored at a position.
+     *
+     * @return the slice, or {@code null} if the length is -1
+     */
+    private ByteBuffer slice(int position) {
+        final int offset = buffer.getInt(position);
+        final int length = buffer.getInt(position + 4);
+        if (length < 0) {
+            return null;
+        }
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        return slice.slice();
+    }
+
+    private byte[] getBytes(int offset, int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static class Entry {
+        private final byte[] path;
+        private final Document document;
+        private final byte[][] bodies;
+        private final int[] offsets;
+        private int pathOffset;
+
+        Entry(byte[] path, Document document) {
+            this.path = path;
+            this.document = document;
+            //In the same order as in the index entry. The DMR and the compressed json are only needed until they have
+            //been written, so they are not left behind on the document
+            final byte[][] dmr = document.encodeDmr();
+            this.bodies = new byte[][] {document.getJson(), document.compressJson(), dmr[0], dmr[1]};
+            this.offsets = new int[bodies.length];
+        }
+
+        long placePath(long offset) {
+            pathOffset = (int) offset;
+            return offset + path.length;
+        }
+
+        long placeBodies(long offset) {
+            for (int i = 0; i < bodies.length; i++) {
+                if (bodies[i] != null) {
+                    offsets[i] = (int) offset;
+                    offset += bodies[i].length;
+                }
+            }
+            return offset;
+        }
+
+        void writeIndexEntry(DataOutputStream out) throws IOException {
+            out.writeInt(pathOffset);
+            out.writeInt(path.length);
+            for (int i = 0; i < bodies.length; i++) {
+                out.writeInt(offsets[i]);
+                out.writeInt(bodies[i] == null ? -1 : bodies[i].length);
+            }
+            out.writeInt(document.isImmutable() ? IMMUTABLE : 0);
+            out.write(document.getHash().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        void writeBodies(DataOutputStream out) throws IOException {
+            for (byte[] body : bodies) {
+                if (body != null) {
+                    out.write(body);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the documents of the file {@link UrlUtil} using a pool of threads, so that the generator does not have to wait
+ * for the disk. Everything is written to a staging directory next to the output directory, which gets swapped in for
+ * the output directory by {@link #finish()}. The previous contents are then deleted in parallel.
+ */
+class ParallelFileOutput {
+    /** The number of threads writing (and deleting) the files. Defaults to the number of processors */
+    static final String WRITER_THREADS = "jsr.373.file.writer-threads";
+    //The most documents which may be waiting to be written, so that a slow disk does not fill up the heap
+    private static final int MAX_PENDING_WRITES = 1024;
+
+    private final Path outputDir;
+    private final Path stagingDir;
+    private final Path previousDir;
+    private final int threads;
+    private final ExecutorService writers;
+    private final Semaphore pendingWrites = new Semaphore(MAX_PENDING_WRITES);
+    //Directories are only created the first time they are asked for
+    private final ConcurrentMap<String, Path> directories = new ConcurrentHashMap<>();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private volatile boolean finished;
+
+    ParallelFileOutput(Path outputDir) throws IOException {
+        this.outputDir = outputDir;
+        this.stagingDir = outputDir.resolveSibling("." + outputDir.getFileName() + ".staging");
+        this.previousDir = outputDir.resolveSibling("." + outputDir.getFileName() + ".previous");
+        this.threads = Integer.getInteger(WRITER_THREADS, Runtime.getRuntime().availableProcessors());
+        if (threads < 1) {
+            throw new IllegalArgumentException(WRITER_THREADS + " must be at least 1: " + threads);
+        }
+        //Left over from a run which did not finish
+        deleteTree(stagingDir);
+        deleteTree(previousDir);
+        Files.createDirectories(stagingDir);
+        writers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "jsr373-file-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a directory, along with any missing parents, unless it has been created already.
+     *
+     * @param path the path of the directory relative to the output directory
+     */
+    void createDirectory(String path) throws IOException {
+        try {
+            directories.computeIfAbsent(path, p -> {
+                final Path dir = resolve(p);
+                try {
+                    return Files.createDirectories(dir);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets a writer for a document. The document is written by one of the writer threads once the returned writer
+     * is closed, so it is only guaranteed to be on disk once {@link #finish()} returns.
+     *
+     * @param path the path of the document relative to the output directory
+     * @return the writer
+     */
+    PrintWriter getWriter(final String path) throws IOException {
+        checkNotFinished();
+        final IOException e = failure.get();
+        if (e != null) {
+            throw new IOException("An earlier write failed", e);
+        }
+        final Buffer bytes = new Buffer();
+        return new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                super.close();
+                submitWrite(path, bytes);
+            }
+        };
+    }
+
+    /**
+     * Waits for the pending writes, swaps the staging directory in for the output directory and deletes the previous
+     * contents of the output directory.
+     */
+    void finish() throws IOException {
+        checkNotFinished();
+        finished = true;
+        writers.shutdown();
+        try {
+            while (!writers.awaitTermination(1, TimeUnit.MINUTES)) {
+                //Keep waiting
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the files to be written");
+        }
+        final IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+        //Both are renames within the same directory, so the output directory is only missing very briefly
+        if (Files.exists(outputDir)) {
+            Files.move(outputDir, previousDir, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(stagingDir, outputDir, StandardCopyOption.ATOMIC_MOVE);
+        deleteTree(previousDir);
+    }
+
+    private void submitWrite(String path, Buffer bytes) {
+        pendingWrites.acquireUninterruptibly();
+        try {
+            writers.execute(() -> {
+                try (FileChannel channel = FileChannel.open(resolve(path),
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    final ByteBuffer buffer = bytes.toByteBuffer();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pendingWrites.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingWrites.release();
+            throw e;
+        }
+    }
+
+    private Path resolve(String path) {
+        return stagingDir.resolve(path.substring(1));
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("The output to " + outputDir + " has already been finished");
+        }
+    }
+
+    private void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new DeleteTask(dir));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class DeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        DeleteTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                final List<DeleteTask> subtasks = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            subtasks.add(new DeleteTask(entry));
+                        } else {
+                            Files.delete(entry);
+                        }
+                    }
+                }
+                invokeAll(subtasks);
+                Files.delete(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024);
+        }
+
+        //Wraps the bytes written rather than copying them
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
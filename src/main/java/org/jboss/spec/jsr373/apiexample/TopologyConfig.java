@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+/**
+ * Describes the size of a synthetic topology for {@link ExampleGenerator} to create, rather than the small hand-written
+ * example. The generated tree only depends on these numbers, so the same configuration always results in the same
+ * documents.
+ */
+public class TopologyConfig {
+    static final String PREFIX = "jsr.373.topology.";
+    static final String SERVERS = PREFIX + "servers";
+    static final String JVMS_PER_SERVER = PREFIX + "jvms-per-server";
+    static final String APPLICATIONS = PREFIX + "applications";
+    static final String MODULES_PER_APPLICATION = PREFIX + "modules-per-application";
+    static final String BEANS_PER_MODULE = PREFIX + "beans-per-module";
+    static final String SERVLETS_PER_MODULE = PREFIX + "servlets-per-module";
+    static final String RESOURCES = PREFIX + "resources";
+
+    private final int servers;
+    private final int jvmsPerServer;
+    private final int applications;
+    private final int modulesPerApplication;
+    private final int beansPerModule;
+    private final int servletsPerModule;
+    private final int resources;
+
+    private TopologyConfig(Builder builder) {
+        this.servers = builder.servers;
+        this.jvmsPerServer = builder.jvmsPerServer;
+        this.applications = builder.applications;
+        this.modulesPerApplication = builder.modulesPerApplication;
+        this.beansPerModule = builder.beansPerModule;
+        this.servletsPerModule = builder.servletsPerModule;
+        this.resources = builder.resources;
+    }
+
+    public static Builder createBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Reads the configuration from the {@code jsr.373.topology.*} system properties. Only
+     * {@code jsr.373.topology.servers} is needed to switch to the synthetic topology, the others fall back to the
+     * defaults of {@link Builder}.
+     *
+     * @return the configuration, or {@code null} if {@code jsr.373.topology.servers} is not set
+     */
+    public static TopologyConfig fromSystemProperties() {
+        if (System.getProperty(SERVERS) == null) {
+            return null;
+        }
+        Builder builder = createBuilder();
+        builder.setServers(Integer.getInteger(SERVERS, builder.servers));
+        builder.setJvmsPerServer(Integer.getInteger(JVMS_PER_SERVER, builder.jvmsPerServer));
+        builder.setApplications(Integer.getInteger(APPLICATIONS, builder.applications));
+        builder.setModulesPerApplication(Integer.getInteger(MODULES_PER_APPLICATION, builder.modulesPerApplication));
+        builder.setBeansPerModule(Integer.getInteger(BEANS_PER_MODULE, builder.beansPerModule));
+        builder.setServletsPerModule(Integer.getInteger(SERVLETS_PER_MODULE, builder.servletsPerModule));
+        builder.setResources(Integer.getInteger(RESOURCES, builder.resources));
+        return builder.build();
+    }
+
+    public int getServers() {
+        return servers;
+    }
+
+    public int getJvmsPerServer() {
+        return jvmsPerServer;
+    }
+
+    public int getApplications() {
+        return applications;
+    }
+
+    public int getModulesPerApplication() {
+        return modulesPerApplication;
+    }
+
+    public int getBeansPerModule() {
+        return beansPerModule;
+    }
+
+    public int getServletsPerModule() {
+        return servletsPerModule;
+    }
+
+    public int getResources() {
+        return resources;
+    }
+
+    /**
+     * Gets the number of resource instances the configuration results in.
+     *
+     * @return the number of instances
+     */
+    public long getInstanceCount() {
+        //Modules cycle through web, ejb and app client modules
+        long webModules = 0;
+        long ejbModules = 0;
+        for (int i = 0; i < modulesPerApplication; i++) {
+            if (i % 3 == 0) {
+                webModules++;
+            } else if (i % 3 == 1) {
+                ejbModules++;
+            }
+        }
+        long perApplication = 1 + modulesPerApplication + webModules * servletsPerModule + ejbModules * beansPerModule;
+        long perServer = 1 + jvmsPerServer + applications * perApplication + resources;
+        return 1 + servers * perServer;
+    }
+
+    @Override
+    public String toString() {
+        return "TopologyConfig(servers=" + servers + ", jvms-per-server=" + jvmsPerServer +
+                ", applications=" + applications + ", modules-per-application=" + modulesPerApplication +
+                ", beans-per-module=" + beansPerModule + ", servlets-per-module=" + servletsPerModule +
+                ", resources=" + resources + ")";
+    }
+
+    public static class Builder {
+        private int servers = 1;
+        private int jvmsPerServer = 1;
+        private int applications = 1;
+        private int modulesPerApplication = 3;
+        private int beansPerModule = 4;
+        private int servletsPerModule = 2;
+        private int resources = 2;
+
+        private Builder() {
+        }
+
+        public Builder setServers(int servers) {
+            this.servers = checkPositive(SERVERS, servers);
+            return this;
+        }
+
+        public Builder setJvmsPerServer(int jvmsPerServer) {
+            this.jvmsPerServer = checkPositive(JVMS_PER_SERVER, jvmsPerServer);
+            return this;
+        }
+
+        public Builder setApplications(int applications) {
+            this.applications = checkNotNegative(APPLICATIONS, applications);
+            return this;
+        }
+
+        public Builder setModulesPerApplication(int modulesPerApplication) {
+            this.modulesPerApplication = checkNotNegative(MODULES_PER_APPLICATION, modulesPerApplication);
+            return this;
+        }
+
+        public Builder setBeansPerModule(int beansPerModule) {
+            this.beansPerModule = checkNotNegative(BEANS_PER_MODULE, beansPerModule);
+            return this;
+        }
+
+        public Builder setServletsPerModule(int servletsPerModule) {
+            this.servletsPerModule = checkNotNegative(SERVLETS_PER_MODULE, servletsPerModule);
+            return this;
+        }
+
+        public Builder setResources(int resources) {
+            this.resources = checkNotNegative(RESOURCES, resources);
+            return this;
+        }
+
+        public TopologyConfig build() {
+            return new TopologyConfig(this);
+        }
+
+        private static int checkPositive(String name, int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1");
+            }
+            return value;
+        }
+
+        private static int checkNotNegative(String name, int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException(name + " must not be negative");
+            }
+            return value;
+        }
+    }
+}
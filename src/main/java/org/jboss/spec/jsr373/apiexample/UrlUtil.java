@@ -21,28 +21,31 @@
  */
 package org.jboss.spec.jsr373.apiexample;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Reader;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.net.URISyntaxException;
+import java.io.UncheckedIOException;
 import java.net.URL;
-import java.nio.file.FileVisitResult;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
-import org.jboss.dmr.ModelNode;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticsHistory;
 import org.jboss.spec.jsr373.apiexample.resource.objects.ManagedObjectType;
 
 /**
@@ -50,22 +53,103 @@ import org.jboss.spec.jsr373.apiexample.resource.objects.ManagedObjectType;
  */
 public interface UrlUtil {
 
-    URL createTemplateUrl(ManagedObjectType resourceType) throws IOException;
-
-    URL createInstanceUrl(String attributeName, URL parentUrl, String name) throws IOException, URISyntaxException;
+    /**
+     * Creates the path of a template. Like the instance paths it is normalised (see
+     * {@link Factory#normalisePath(String)}) and interned, and is what the documents are keyed on. Absolute urls are
+     * only created from it by {@link #toHref(String)}.
+     *
+     * @param resourceType the type of the template
+     * @return the path
+     */
+    String createTemplatePath(ManagedObjectType resourceType) throws IOException;
+
+    /**
+     * Creates the path of an instance.
+     *
+     * @param attributeName the name of the attribute in the parent containing the instance
+     * @param parentPath the path of the parent, or {@code null} for a root instance
+     * @param name the name of the instance
+     * @return the path
+     */
+    String createInstancePath(String attributeName, String parentPath, String name) throws IOException;
+
+    /**
+     * Creates the path of the statistics of an instance.
+     *
+     * @param instancePath the path of the instance
+     * @return the path
+     */
+    String createStatisticsPath(String instancePath) throws IOException;
+
+    /**
+     * Renders the absolute url of a path created by this instance.
+     *
+     * @param path the path
+     * @return the url
+     */
+    String toHref(String path);
+
+    PrintWriter getWriter(String path) throws IOException ;
+
+    List<String> getAllTemplatePaths();
+
+    List<String> getAllInstancePaths();
+
+    /**
+     * Called once all the documents have been written. Implementations which write the documents in the background
+     * wait for them to be written here.
+     */
+    default void finish() throws IOException {
+    }
 
-    PrintWriter getWriter(URL url) throws IOException ;
+    /**
+     * Registers the document of an instance with live attribute values, which has already been written once by
+     * {@link #getWriter(String)}. Implementations which serve the documents while the application is running render
+     * it again whenever its version changes, while the others can keep what was written.
+     *
+     * @param path the path of the instance
+     * @param document renders the document
+     */
+    default void addLiveDocument(String path, LiveDocument document) {
+    }
 
-    List<URL> getAllTemplateUrls();
+    /**
+     * Registers the statistics of an instance, whose document has been registered with
+     * {@link #addLiveDocument(String, LiveDocument)}. Implementations which serve the documents while the application
+     * is running serve their history, while the others can ignore them.
+     *
+     * @param path the path of the statistics document
+     * @param history the histories of the statistics
+     */
+    default void addStatisticsHistory(String path, StatisticsHistory history) {
+    }
 
-    List<URL> getAllInstanceUrls();
+    /**
+     * A document whose contents change over time.
+     */
+    interface LiveDocument {
+        /**
+         * Gets the version of the contents, which changes whenever they do. This must be cheap, since it gets called
+         * for every request.
+         *
+         * @return the version
+         */
+        long getVersion();
+
+        /**
+         * Renders the current contents.
+         *
+         * @param writer the writer to render to
+         */
+        void write(PrintWriter writer) throws IOException;
+    }
 
     class Factory {
         public static final URL SERVLET_ROOT_URL;
         static {
             String rootString = System.getProperty("jsr.373.servlet.root", "http://localhost:8080/jsr373example/contents");
             if (rootString.endsWith("/")) {
-                rootString.substring(0, rootString.length());
+                rootString = rootString.substring(0, rootString.length() - 1);
             }
             try {
                 SERVLET_ROOT_URL = new URL(rootString);
@@ -76,52 +160,63 @@ public interface UrlUtil {
         }
 
         public static UrlUtil createServletInstance(final ServletUrlRegistry urlRegistry) throws  IOException {
-            final List<URL> templateUrls = new ArrayList<>();
-            final List<URL> instanceUrls = new ArrayList<>();
-            final URL root = SERVLET_ROOT_URL;
+            final List<String> templatePaths = new ArrayList<>();
+            final Set<String> templatePathSet = new HashSet<>();
+            final List<String> instancePaths = new ArrayList<>();
+            final String root = SERVLET_ROOT_URL.toExternalForm();
             return new UrlUtil() {
                 @Override
-                public URL createTemplateUrl(ManagedObjectType resourceType) throws IOException {
-                    URL url = appendURL(root, "templates", resourceType.getName().toLowerCase(Locale.ENGLISH));
-                    templateUrls.add(url);
-                    return url;
+                public String createTemplatePath(ManagedObjectType resourceType) throws IOException {
+                    String path = appendPath("", "templates", resourceType.getName().toLowerCase(Locale.ENGLISH));
+                    templatePaths.add(path);
+                    templatePathSet.add(path);
+                    urlRegistry.addToIndex(path);
+                    return path;
                 }
 
                 @Override
-                public URL createInstanceUrl(String attributeName, URL parentUrl, String name) throws IOException, URISyntaxException {
-                    final URL parent = parentUrl == null ? root : parentUrl;
-                    URL url =  appendURL(parent, attributeName, escape(name));
-                    instanceUrls.add(url);
-                    return url;
+                public String createInstancePath(String attributeName, String parentPath, String name) throws IOException {
+                    String path = appendPath(parentPath == null ? "" : parentPath, attributeName, escape(name));
+                    instancePaths.add(path);
+                    urlRegistry.addToIndex(path);
+                    return path;
                 }
 
                 @Override
-                public PrintWriter getWriter(URL url) throws IOException {
-                    return urlRegistry.getWriter(url);
+                public String createStatisticsPath(String instancePath) throws IOException {
+                    //Not indexed, since the statistics are not an entry in a collection
+                    return appendPath(instancePath, "statistics");
                 }
 
                 @Override
-                public List<URL> getAllTemplateUrls() {
-                    return templateUrls;
+                public String toHref(String path) {
+                    return root.concat(path);
                 }
 
                 @Override
-                public List<URL> getAllInstanceUrls() {
-                    return instanceUrls;
+                public PrintWriter getWriter(String path) throws IOException {
+                    //Templates do not change once created
+                    return urlRegistry.getWriter(path, templatePathSet.contains(path));
                 }
 
-                private URL appendURL(URL parentURL, String... pathElements) throws IOException {
-                    StringBuilder parent = new StringBuilder(parentURL.toExternalForm());
-                    boolean hasSlash = parent.charAt(parent.length() - 1) == '/';
+                @Override
+                public void addLiveDocument(String path, LiveDocument document) {
+                    urlRegistry.addLiveDocument(path, document);
+                }
 
-                    for (String element : pathElements) {
-                        if (!hasSlash) {
-                            parent.append('/');
-                        }
-                        parent.append(element);
-                        hasSlash = false;
-                    }
-                    return new URL(parent.toString());
+                @Override
+                public void addStatisticsHistory(String path, StatisticsHistory history) {
+                    urlRegistry.addStatisticsHistory(path, history);
+                }
+
+                @Override
+                public List<String> getAllTemplatePaths() {
+                    return templatePaths;
+                }
+
+                @Override
+                public List<String> getAllInstancePaths() {
+                    return instancePaths;
                 }
             };
         }
@@ -133,85 +228,120 @@ public interface UrlUtil {
             }
             final Path outputDir = path.getParent().resolve("site-contents");
 
+            final ParallelFileOutput output = new ParallelFileOutput(outputDir);
+            System.out.println("Output directory is " + outputDir.toAbsolutePath());
+
+            //The paths are those of the files relative to the output directory
             return new UrlUtil() {
-                {
-                    Files.walkFileTree(outputDir, new SimpleFileVisitor<Path>() {
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                            Files.delete(file);
-                            return FileVisitResult.CONTINUE;
-                        }
+                @Override
+                public String createTemplatePath(ManagedObjectType resourceType) throws IOException {
+                    return appendPath("", createJsonFileName(resourceType.getName()));
+                }
 
-                        @Override
-                        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                            Files.delete(dir);
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-                    if (Files.exists(outputDir)) {
-                        Files.delete(outputDir);
-                    }
-                    Files.createDirectories(outputDir);
-                    System.out.println("Output directory is " + outputDir.toAbsolutePath());
+                @Override
+                public String createInstancePath(String attributeName, String parentPath, String name) throws IOException {
+                    String parent = parentPath != null ? getChildDirectory(parentPath) : "";
+                    String directory = appendPath(parent, attributeName);
+                    output.createDirectory(directory);
+                    return appendPath(directory, createJsonFileName(escape(name)));
+                }
 
+                @Override
+                public String createStatisticsPath(String instancePath) throws IOException {
+                    //In the same directory as the children
+                    final String directory = getChildDirectory(instancePath);
+                    output.createDirectory(directory);
+                    return appendPath(directory, createJsonFileName("statistics"));
                 }
 
                 @Override
-                public URL createTemplateUrl(ManagedObjectType resourceType) throws IOException {
-                    return outputDir.resolve(createJsonFileName(resourceType.getName())).toUri().toURL();
+                public String toHref(String path) {
+                    //Same as toUri().toURL().toExternalForm(), without going through URL
+                    return "file:" + toFile(path).toUri().getRawPath();
                 }
 
                 @Override
-                public URL createInstanceUrl(String attributeName, URL parentUrl, String name) throws IOException, URISyntaxException {
-                    Path parent;
-                    if (parentUrl != null) {
-                        parent = Paths.get(parentUrl.toURI()).toAbsolutePath();
-                        if (!Files.isDirectory(parent)) {
-                            //TODO this sucks?
-                            String parentName = parent.getFileName().toString();
-                            int index = parentName.indexOf(".");
-                            if (index >= 0) {
-                                parentName = parentName.substring(0, index);
-                                parent = parent.getParent().resolve(parentName);
-                            }
-                        }
-                    } else {
-                        parent = outputDir;
-                    }
-                    Path path = parent.resolve(attributeName);
-                    if (!Files.exists(path)) {
-                        Files.createDirectories(path);
-                    }
-                    return path.resolve(createJsonFileName(escape(name))).toUri().toURL();
+                public PrintWriter getWriter(String path) throws IOException {
+                    return output.getWriter(path);
                 }
 
                 @Override
-                public PrintWriter getWriter(URL url) throws IOException {
-                    try {
-                        return new PrintWriter(new BufferedWriter(new FileWriter(Paths.get(url.toURI()).toFile())));
-                    } catch (URISyntaxException e) {
-                        throw new IOException(e);
-                    }
+                public void finish() throws IOException {
+                    output.finish();
                 }
 
                 @Override
-                public List<URL> getAllTemplateUrls() {
+                public List<String> getAllTemplatePaths() {
                     //Only bother with this in the servlet case
                     return null;
                 }
 
                 @Override
-                public List<URL> getAllInstanceUrls() {
+                public List<String> getAllInstancePaths() {
                     //Only bother with this in the servlet case
                     return null;
                 }
 
+                private String getChildDirectory(String parentPath) {
+                    //The children go in a directory named after the parent's file, minus everything from the first '.'
+                    final int nameStart = parentPath.lastIndexOf('/') + 1;
+                    final int index = parentPath.indexOf('.', nameStart);
+                    return index >= 0 ? parentPath.substring(0, index) : parentPath;
+                }
+
+                private Path toFile(String path) {
+                    return outputDir.resolve(path.substring(1));
+                }
+
                 private String createJsonFileName(String name) {
                     return name.toLowerCase(Locale.ENGLISH) + ".json";
                 }
             };
         }
 
+        /**
+         * Normalises a path so that it can be used to look up a document. A normalised path starts with a '/' unless
+         * it is empty (the root), does not end with a '/', and has no empty elements.
+         *
+         * @param path the path, e.g. the path info of a request. May be {@code null}
+         * @return the normalised path
+         */
+        public static String normalisePath(String path) {
+            if (path == null) {
+                return "";
+            }
+            final int length = path.length();
+            if (length == 0 ||
+                    (path.charAt(0) == '/' && path.charAt(length - 1) != '/' && path.indexOf("//") < 0)) {
+                return path;
+            }
+            final StringBuilder sb = new StringBuilder(length + 1);
+            boolean separator = true;
+            for (int i = 0; i < length; i++) {
+                final char c = path.charAt(i);
+                if (c == '/') {
+                    separator = true;
+                } else {
+                    if (separator) {
+                        sb.append('/');
+                        separator = false;
+                    }
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private static String appendPath(String parent, String... pathElements) {
+            StringBuilder path = new StringBuilder(parent);
+            for (String element : pathElements) {
+                path.append('/');
+                path.append(element);
+            }
+            //The same paths are held by the instances, the registry and its index
+            return normalisePath(path.toString()).intern();
+        }
+
         static String escape(String s) {
             StringBuilder sb = new StringBuilder();
             char[] chars = s.toCharArray();
@@ -235,40 +365,370 @@ public interface UrlUtil {
         }
     }
 
-    class ServletUrlRegistry {
-        final Map<URL, String> jsonByUrl = new LinkedHashMap<>();
-
-        private PrintWriter getWriter(final URL url) {
-            final StringWriter stringWriter = new StringWriter();
-            return new PrintWriter(stringWriter){
+    class ServletUrlRegistry implements DocumentRegistry {
+        private static final byte[] INDENT = "    ".getBytes(StandardCharsets.UTF_8);
+        static final Document EMPTY_LIST = new Document("[]".getBytes(StandardCharsets.UTF_8), false);
+
+        //The documents are encoded once when written, so they can be served as is. Writers may run in parallel, and
+        //what they write only becomes visible to readers once publish() is called
+        //Everything is keyed on the normalised paths, so that a lookup is a plain hash probe. URL.equals() and
+        //hashCode() may resolve the host name, which is no good for a lookup table
+        private final ConcurrentMap<String, Document> stagedJsonByPath = new ConcurrentHashMap<>();
+        //Index of the collection path (i.e. the path minus its last element) to the paths of its entries. This is
+        //populated as the paths are created rather than as the documents are written, so the order of the entries
+        //stays the same no matter which order (or how many threads) the documents get written in
+        private final ConcurrentMap<String, Queue<String>> stagedChildPathsByParent = new ConcurrentHashMap<>();
+        //The documents which get rendered again when their values change. These are also in stagedJsonByPath, as they
+        //were when first written
+        private final ConcurrentMap<String, LiveEntry> stagedLiveByPath = new ConcurrentHashMap<>();
+        //The histories of the statistics documents, which are also in stagedLiveByPath
+        private final ConcurrentMap<String, StatisticsHistory> stagedHistoriesByPath = new ConcurrentHashMap<>();
+
+        //The published state which is read without locking
+        private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap(),
+                Collections.emptyMap(), Collections.emptyMap());
+
+        private PrintWriter getWriter(final String path, final boolean immutable) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            return new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8)){
                 @Override
                 public void close() {
                     super.close();
-                    synchronized (this) {
-                        jsonByUrl.put(url, stringWriter.getBuffer().toString());
-                    }
+                    put(path, new Document(bytes.toByteArray(), immutable));
                 }
             };
         }
 
-        public synchronized Reader getReader(URL url) {
-            String json = jsonByUrl.get(url);
-            if (json == null) {
-                //Try the parent
-                String val = url.toExternalForm();
-                ModelNode list = new ModelNode().setEmptyList();
-                jsonByUrl.entrySet().forEach( entry -> {
-                    String current = entry.getKey().toExternalForm();
-                    current = current.substring(0, current.lastIndexOf('/'));
-                    if (current.equals(val)) {
-                        list.add(ModelNode.fromJSONString(entry.getValue()));
+        private void addToIndex(String path) {
+            stagedChildPathsByParent.computeIfAbsent(getParentPath(path), k -> new ConcurrentLinkedQueue<>()).add(path);
+        }
+
+        private void put(String path, Document json) {
+            stagedJsonByPath.put(path, json);
+        }
+
+        private void addLiveDocument(String path, LiveDocument document) {
+            stagedLiveByPath.put(path, new LiveEntry(path, document));
+        }
+
+        private void addStatisticsHistory(String path, StatisticsHistory history) {
+            stagedHistoriesByPath.put(path, history);
+        }
+
+        /**
+         * Adds the documents of another registry to the collections which the documents written here are entries of,
+         * so that those collections list all their entries rather than only the ones written here. Where both have a
+         * document for the same path, the one written here is kept. Like the documents written, these only become
+         * visible once {@link #publish()} is called.
+         *
+         * @param registry the registry holding the other documents
+         * @param paths the paths of the other registry's documents, in the order they were created
+         */
+        public void addEntries(DocumentRegistry registry, List<String> paths) {
+            final Set<String> parents = new HashSet<>();
+            for (Map.Entry<String, Queue<String>> entry : stagedChildPathsByParent.entrySet()) {
+                for (String child : entry.getValue()) {
+                    if (stagedJsonByPath.containsKey(child)) {
+                        parents.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+            final Map<String, Queue<String>> childPathsByParent = new HashMap<>();
+            for (String path : paths) {
+                final String parent = getParentPath(path);
+                if (parents.contains(parent)) {
+                    childPathsByParent.computeIfAbsent(parent, k -> new ConcurrentLinkedQueue<>()).add(path);
+                    final Document document = registry.getDocument(path);
+                    if (document != null) {
+                        stagedJsonByPath.putIfAbsent(path, document);
+                    }
+                }
+            }
+            //The entries keep the order of the other registry, followed by any which were only written here
+            childPathsByParent.forEach((parent, children) -> {
+                for (String child : stagedChildPathsByParent.get(parent)) {
+                    if (!children.contains(child)) {
+                        children.add(child);
+                    }
+                }
+                stagedChildPathsByParent.put(parent, children);
+            });
+        }
+
+        /**
+         * Makes everything written so far visible to {@link #getDocument(String)} and {@link #getCollection(String)}.
+         * Readers see either the previous or the new state, never a mix of the two.
+         */
+        public synchronized void publish() {
+            final Map<String, Document> jsonByPath = new HashMap<>(stagedJsonByPath);
+            final Map<String, List<String>> childPathsByParent = new HashMap<>();
+            stagedChildPathsByParent.forEach((parent, children) -> {
+                final List<String> written = new ArrayList<>(children.size());
+                //Leave out anything which has not been written yet
+                children.forEach(child -> {
+                    if (jsonByPath.containsKey(child)) {
+                        written.add(child);
                     }
                 });
+                if (!written.isEmpty()) {
+                    childPathsByParent.put(parent, Collections.unmodifiableList(written));
+                }
+            });
+            final Map<String, LiveEntry> liveByPath = new HashMap<>(stagedLiveByPath);
+            liveByPath.keySet().retainAll(jsonByPath.keySet());
+            final Map<String, StatisticsHistory> historiesByPath = new HashMap<>(stagedHistoriesByPath);
+            historiesByPath.keySet().retainAll(jsonByPath.keySet());
+            snapshot = new Snapshot(jsonByPath, childPathsByParent, liveByPath, historiesByPath);
+        }
+
+        /**
+         * Gets the number of distinct documents written so far, whether they have been published or not.
+         *
+         * @return the number of documents
+         */
+        public int getWrittenDocumentCount() {
+            return stagedJsonByPath.size();
+        }
+
+        /**
+         * Gets the published document for a path.
+         */
+        @Override
+        public Document getDocument(String path) {
+            return snapshot.getDocument(path);
+        }
+
+        /**
+         * Gets the published collection for a path.
+         */
+        @Override
+        public Document getCollection(String path) {
+            return snapshot.getCollection(path);
+        }
+
+        /**
+         * Gets the history of the published statistics document for a path.
+         *
+         * @param path the normalised path of the statistics document
+         * @return the history, or {@code null} if there is no such statistics document
+         */
+        public StatisticsHistory getStatisticsHistory(String path) {
+            return snapshot.historiesByPath.get(path);
+        }
+
+        /**
+         * Checks whether a published collection has any entries.
+         *
+         * @param path the normalised path of the collection
+         * @return {@code true} if the collection has entries
+         */
+        public boolean hasCollection(String path) {
+            return snapshot.childPathsByParent.containsKey(path);
+        }
+
+        Set<String> getPublishedDocumentPaths() {
+            return snapshot.jsonByPath.keySet();
+        }
+
+        Set<String> getPublishedCollectionPaths() {
+            return snapshot.childPathsByParent.keySet();
+        }
+
+        private static String getParentPath(String path) {
+            return path.substring(0, path.lastIndexOf('/'));
+        }
+
+        private static class Snapshot {
+            private final Map<String, Document> jsonByPath;
+            private final Map<String, List<String>> childPathsByParent;
+            private final Map<String, LiveEntry> liveByPath;
+            private final Map<String, StatisticsHistory> historiesByPath;
+            //Collections are rendered on first use. Any thread doing so renders the same bytes, so there is no need
+            //to lock out the others. Those containing live documents change with them, so they are kept along with
+            //the entries they were rendered from, and rendered again once any of those have been replaced
+            private final ConcurrentMap<String, Document> collectionsByPath = new ConcurrentHashMap<>();
+            private final ConcurrentMap<String, RenderedCollection> liveCollectionsByPath = new ConcurrentHashMap<>();
+
+            Snapshot(Map<String, Document> jsonByPath, Map<String, List<String>> childPathsByParent,
+                     Map<String, LiveEntry> liveByPath, Map<String, StatisticsHistory> historiesByPath) {
+                this.jsonByPath = jsonByPath;
+                this.childPathsByParent = childPathsByParent;
+                this.liveByPath = liveByPath;
+                this.historiesByPath = historiesByPath;
+            }
+
+            Document getDocument(String path) {
+                if (!liveByPath.isEmpty()) {
+                    final LiveEntry live = liveByPath.get(path);
+                    if (live != null) {
+                        return live.getDocument();
+                    }
+                }
+                return jsonByPath.get(path);
+            }
+
+            Document getCollection(String path) {
+                Document json = collectionsByPath.get(path);
+                if (json != null) {
+                    return json;
+                }
+                final List<String> children = childPathsByParent.get(path);
+                if (children == null) {
+                    return EMPTY_LIST;
+                }
+                final Document[] entries = new Document[children.size()];
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = getDocument(children.get(i));
+                }
+                RenderedCollection rendered = liveCollectionsByPath.get(path);
+                if (rendered != null) {
+                    if (!rendered.isRenderedFrom(entries)) {
+                        //Threads racing here render from equally recent entries, so whichever one gets stored is fine
+                        rendered = new RenderedCollection(entries, renderCollection(entries));
+                        liveCollectionsByPath.put(path, rendered);
+                    }
+                    return rendered.document;
+                }
+                json = renderCollection(entries);
+                if (containsLive(children)) {
+                    liveCollectionsByPath.putIfAbsent(path, new RenderedCollection(entries, json));
+                } else {
+                    collectionsByPath.putIfAbsent(path, json);
+                }
+                return json;
+            }
+
+            private boolean containsLive(List<String> children) {
+                if (liveByPath.isEmpty()) {
+                    return false;
+                }
+                for (String child : children) {
+                    if (liveByPath.containsKey(child)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            private static Document renderCollection(Document[] documents) {
+                if (documents.length == 0) {
+                    return EMPTY_LIST;
+                }
+                //Lay out the entries the same way as ModelNode.toJSONString(false) would for a list, by indenting the
+                //already formatted entries rather than parsing them again. A '\n' byte never occurs within a multi-byte
+                //UTF-8 sequence, and the json writer escapes the ones within strings, so it is safe to work on the bytes
+                int length = 2;
+                boolean immutable = true;
+                final byte[][] entries = new byte[documents.length][];
+                for (int i = 0; i < entries.length; i++) {
+                    final Document entry = documents[i];
+                    entries[i] = entry.getJson();
+                    length += entries[i].length + 2 + INDENT.length;
+                    immutable &= entry.isImmutable();
+                }
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(length + (length >> 3));
+                out.write('[');
+                if (entries.length == 1) {
+                    final byte[] entry = entries[0];
+                    out.write(entry, 0, entry.length);
+                } else {
+                    for (int i = 0; i < entries.length; i++) {
+                        if (i > 0) {
+                            out.write(',');
+                        }
+                        out.write('\n');
+                        out.write(INDENT, 0, INDENT.length);
+                        final byte[] entry = entries[i];
+                        int start = 0;
+                        for (int j = 0; j < entry.length; j++) {
+                            if (entry[j] == '\n') {
+                                out.write(entry, start, j + 1 - start);
+                                out.write(INDENT, 0, INDENT.length);
+                                start = j + 1;
+                            }
+                        }
+                        out.write(entry, start, entry.length - start);
+                    }
+                    out.write('\n');
+                }
+                out.write(']');
+                return new Document(out.toByteArray(), immutable);
+            }
+        }
 
-                return new StringReader(list.toJSONString(false));
+        /**
+         * A rendered collection containing live documents, along with the entries it was rendered from.
+         */
+        private static class RenderedCollection {
+            private final Document[] entries;
+            private final Document document;
+
+            RenderedCollection(Document[] entries, Document document) {
+                this.entries = entries;
+                this.document = document;
+            }
+
+            boolean isRenderedFrom(Document[] entries) {
+                if (entries.length != this.entries.length) {
+                    return false;
+                }
+                //A live entry hands out the same document until its version changes, so comparing them is enough
+                for (int i = 0; i < entries.length; i++) {
+                    if (entries[i] != this.entries[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Holds the latest rendering of a live document, and renders it again once its version has changed.
+         */
+        private static class LiveEntry {
+            //Live documents start again from the same versions after a restart, so this keeps their entity tags from
+            //matching those handed out by a previous process
+            private static final long NONCE = new SecureRandom().nextLong();
+
+            private final String path;
+            private final LiveDocument document;
+            private volatile Rendered rendered;
+
+            LiveEntry(String path, LiveDocument document) {
+                this.path = path;
+                this.document = document;
+            }
+
+            Document getDocument() {
+                final long version = document.getVersion();
+                Rendered rendered = this.rendered;
+                if (rendered == null || rendered.version != version) {
+                    //Threads racing here render the same version, so whichever one gets stored is fine
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+                        document.write(writer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    //The entity tag comes from the version rather than from hashing the bytes, which may well change
+                    //again before anyone asks for it
+                    final String hash = String.format("%016x%08x%016x", NONCE, path.hashCode(), version);
+                    rendered = new Rendered(version, new Document(bytes.toByteArray(), hash));
+                    this.rendered = rendered;
+                }
+                return rendered.document;
             }
-            return new StringReader(json);
         }
 
+        private static class Rendered {
+            private final long version;
+            private final Document document;
+
+            Rendered(long version, Document document) {
+                this.version = version;
+                this.document = document;
+            }
+        }
     }
 }
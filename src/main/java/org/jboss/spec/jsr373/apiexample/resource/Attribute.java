@@ -22,12 +22,12 @@
 
 package org.jboss.spec.jsr373.apiexample.resource;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
-import org.jboss.dmr.ModelNode;
 import org.jboss.spec.jsr373.apiexample.resource.objects.ManagedObjectType;
 
 /**
@@ -73,20 +73,30 @@ public class Attribute {
         return nillable;
     }
 
-    ModelNode toModelNode() {
-        ModelNode model = new ModelNode();
-        model.get("description").set(description);
-        model.get("type").set(type.toString());
+    void writeJson(JsonWriter json) throws IOException {
+        int entries = 4;
         if (!type.isSimple()) {
-            model.get("value-type").set(valueType.toString());
+            entries++;
         }
-        model.get("access").set(access.toString());
-        model.get("nillable").set(nillable);
         if (!handledChildTypes.isEmpty()) {
-            ModelNode allowedTypes = model.get("allowed-types").setEmptyObject();
-            handledChildTypes.forEach(type -> Util.addTypeLinkToMap(allowedTypes, ManagedObjectType.getInstanceForClass(type)));
+            entries++;
         }
-        return model;
+        json.beginObject(entries);
+        json.name("description").value(description);
+        json.name("type").value(type.toString());
+        if (!type.isSimple()) {
+            json.name("value-type").value(valueType.toString());
+        }
+        json.name("access").value(access.toString());
+        json.name("nillable").value(nillable);
+        if (!handledChildTypes.isEmpty()) {
+            json.name("allowed-types").beginObject(handledChildTypes.size());
+            for (Class<? extends ManagedObjectType> type : handledChildTypes) {
+                Util.writeTypeLink(json, ManagedObjectType.getInstanceForClass(type));
+            }
+            json.endObject();
+        }
+        json.endObject();
     }
 
     public Set<Class<? extends ManagedObjectType>> getHandledChildTypes() {
@@ -100,7 +110,7 @@ public class Attribute {
         boolean nillable = false;
         AttributeAccess access = AttributeAccess.READ_ONLY;
         AttributeType valueType;
-        private final Set<Class<? extends ManagedObjectType>> handledChildTypes = new HashSet<>();
+        private final Set<Class<? extends ManagedObjectType>> handledChildTypes = new LinkedHashSet<>();
 
         private Builder(String name, AttributeType type, String description) {
             this.name = name;
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The layout of the attribute values of the instances of a template. Each attribute gets an ordinal, in the order
+ * they were added to the template, and each ordinal a slot in the {@link AttributeValues} of an instance.
+ * {@code BOOLEAN}, {@code INT}, {@code LONG}, {@code FLOAT}, {@code DOUBLE} and {@code DATE} values go in a
+ * {@code long[]}, so they don't need an object each. The rest go in an {@code Object[]}: strings and urls as a
+ * {@code String}, and lists and maps as a {@code ModelNode}. The names live here rather than in every instance.
+ */
+class AttributeLayout {
+    //Which ordinals are set is kept in a long
+    static final int MAX_ATTRIBUTES = Long.SIZE;
+
+    private final Attribute[] attributes;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final int[] slots;
+    private final int primitiveSlots;
+    private final int objectSlots;
+
+    AttributeLayout(Collection<Attribute> attributes) {
+        if (attributes.size() > MAX_ATTRIBUTES) {
+            throw new IllegalStateException("A template can not have more than " + MAX_ATTRIBUTES + " attributes");
+        }
+        this.attributes = attributes.toArray(new Attribute[attributes.size()]);
+        this.slots = new int[this.attributes.length];
+        int primitiveSlots = 0;
+        int objectSlots = 0;
+        for (int i = 0; i < this.attributes.length; i++) {
+            ordinals.put(this.attributes[i].getName(), i);
+            slots[i] = isPrimitive(this.attributes[i].getType()) ? primitiveSlots++ : objectSlots++;
+        }
+        this.primitiveSlots = primitiveSlots;
+        this.objectSlots = objectSlots;
+    }
+
+    static boolean isPrimitive(AttributeType type) {
+        switch (type) {
+            case BOOLEAN:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case DATE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gets the ordinal of an attribute.
+     *
+     * @param name the name of the attribute
+     * @return the ordinal, or {@code -1} if the template has no such attribute
+     */
+    int getOrdinal(String name) {
+        final Integer ordinal = ordinals.get(name);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    int size() {
+        return attributes.length;
+    }
+
+    Attribute getAttribute(int ordinal) {
+        return attributes[ordinal];
+    }
+
+    String getName(int ordinal) {
+        return attributes[ordinal].getName();
+    }
+
+    /**
+     * Gets the index of the slot for an attribute, in either the primitive or the object values depending on the type
+     * of the attribute.
+     *
+     * @param ordinal the ordinal of the attribute
+     * @return the index of the slot
+     */
+    int getSlot(int ordinal) {
+        return slots[ordinal];
+    }
+
+    int getPrimitiveSlots() {
+        return primitiveSlots;
+    }
+
+    int getObjectSlots() {
+        return objectSlots;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * The attribute values of an instance, laid out as given by the {@link AttributeLayout} of its template. Values are
+ * converted to the type of their attribute when set, which also validates them. A {@code DATE} is kept as the
+ * milliseconds since the epoch, and may be set either as that or as an RFC 3339 string. It is written as an RFC 3339
+ * string in UTC.
+ * <p/>
+ * The default values of a template are shared by all its instances. Once {@link #freeze() frozen} they can no longer
+ * be changed, and the json of each value is encoded up front. An instance only gets values of its own when one is
+ * set, by making a {@link #copy()}, and the values it did not override are still written from the json of the
+ * defaults.
+ */
+class AttributeValues {
+    private static final long[] NO_PRIMITIVES = new long[0];
+    private static final Object[] NO_OBJECTS = new Object[0];
+
+    private final AttributeLayout layout;
+    private final long[] primitives;
+    private final Object[] objects;
+    //Bit n is set if the attribute with ordinal n has a value
+    private long defined;
+    //The frozen values these were copied from, and which of the values are still the ones from there
+    private final AttributeValues defaults;
+    private long inherited;
+    //The json of each value, once frozen
+    private String[] encoded;
+
+    AttributeValues(AttributeLayout layout) {
+        this.layout = layout;
+        this.primitives = layout.getPrimitiveSlots() == 0 ? NO_PRIMITIVES : new long[layout.getPrimitiveSlots()];
+        this.objects = layout.getObjectSlots() == 0 ? NO_OBJECTS : new Object[layout.getObjectSlots()];
+        this.defaults = null;
+    }
+
+    private AttributeValues(AttributeValues defaults) {
+        this.layout = defaults.layout;
+        this.primitives = defaults.primitives.length == 0 ? NO_PRIMITIVES : defaults.primitives.clone();
+        this.objects = defaults.objects.length == 0 ? NO_OBJECTS : defaults.objects.clone();
+        this.defined = defaults.defined;
+        this.defaults = defaults;
+        this.inherited = defaults.defined;
+    }
+
+    /**
+     * Makes these values immutable, and encodes the json of the values which can be written as is.
+     *
+     * @return these values
+     */
+    AttributeValues freeze() throws IOException {
+        if (encoded != null) {
+            return this;
+        }
+        final String[] encoded = new String[layout.size()];
+        final StringWriter writer = new StringWriter();
+        final JsonWriter json = new JsonWriter(writer);
+        for (int ordinal = 0; ordinal < encoded.length; ordinal++) {
+            //Lists and maps span several lines when they have more than one entry, so their indentation depends on
+            //where they are written
+            if (isDefined(ordinal) && layout.getAttribute(ordinal).getType().isSimple()) {
+                writer.getBuffer().setLength(0);
+                write(ordinal, json);
+                json.flush();
+                encoded[ordinal] = writer.toString();
+            }
+        }
+        this.encoded = encoded;
+        return this;
+    }
+
+    boolean isFrozen() {
+        return encoded != null;
+    }
+
+    /**
+     * Creates a modifiable copy of these values.
+     *
+     * @return the copy
+     */
+    AttributeValues copy() {
+        if (!isFrozen()) {
+            throw new IllegalStateException("Only frozen values are meant to be shared");
+        }
+        return new AttributeValues(this);
+    }
+
+    AttributeLayout getLayout() {
+        return layout;
+    }
+
+    boolean isDefined(int ordinal) {
+        return (defined & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Gets the number of attributes which have a value.
+     *
+     * @return the number of attributes
+     */
+    int getDefinedCount() {
+        return Long.bitCount(defined);
+    }
+
+    /**
+     * Sets the value of an attribute, or clears it if the value is undefined.
+     *
+     * @param ordinal the ordinal of the attribute
+     * @param value the value
+     * @throws IllegalArgumentException if the value can not be converted to the type of the attribute
+     * @throws IllegalStateException if the value is not valid for the attribute
+     */
+    void set(int ordinal, ModelNode value) {
+        if (isFrozen()) {
+            throw new IllegalStateException("The values are frozen");
+        }
+        inherited &= ~(1L << ordinal);
+        final Attribute attribute = layout.getAttribute(ordinal);
+        final int slot = layout.getSlot(ordinal);
+        if (value == null || !value.isDefined()) {
+            defined &= ~(1L << ordinal);
+            if (!AttributeLayout.isPrimitive(attribute.getType())) {
+                objects[slot] = null;
+            }
+            return;
+        }
+        switch (attribute.getType()) {
+            case BOOLEAN:
+                primitives[slot] = value.asBoolean() ? 1 : 0;
+                break;
+            case INT:
+                primitives[slot] = value.asInt();
+                break;
+            case LONG:
+                primitives[slot] = value.asLong();
+                break;
+            case FLOAT:
+            case DOUBLE:
+                primitives[slot] = Double.doubleToRawLongBits(value.asDouble());
+                break;
+            case DATE:
+                primitives[slot] = toDate(attribute.getName(), value);
+                break;
+            case STRING:
+                objects[slot] = value.asString();
+                break;
+            case URL:
+                objects[slot] = validateUrl(attribute.getName(), value.asString());
+                break;
+            case LIST:
+                if (value.getType() != ModelType.LIST) {
+                    throw new IllegalStateException("'" + attribute.getName() + "' is not a list");
+                }
+                value.asList().forEach(entry -> validateSimpleValue(attribute.getValueType(), attribute.getName(), entry));
+                objects[slot] = value;
+                break;
+            case MAP:
+                if (value.getType() != ModelType.OBJECT) {
+                    throw new IllegalStateException("'" + attribute.getName() + "' is not a map");
+                }
+                value.asPropertyList().forEach(prop -> validateSimpleValue(attribute.getValueType(), attribute.getName(), prop.getValue()));
+                objects[slot] = value;
+                break;
+            default:
+                throw new IllegalStateException("Unknown type " + attribute.getType());
+        }
+        defined |= 1L << ordinal;
+    }
+
+    /**
+     * Writes the value of an attribute which has one.
+     *
+     * @param ordinal the ordinal of the attribute
+     * @param json the json writer to write to
+     */
+    void write(int ordinal, JsonWriter json) throws IOException {
+        final String[] encoded = (inherited & (1L << ordinal)) != 0 ? defaults.encoded : this.encoded;
+        if (encoded != null && encoded[ordinal] != null) {
+            json.encodedValue(encoded[ordinal]);
+            return;
+        }
+        final int slot = layout.getSlot(ordinal);
+        switch (layout.getAttribute(ordinal).getType()) {
+            case BOOLEAN:
+                json.value(primitives[slot] != 0);
+                break;
+            case INT:
+            case LONG:
+                json.value(primitives[slot]);
+                break;
+            case FLOAT:
+            case DOUBLE:
+                json.value(Double.longBitsToDouble(primitives[slot]));
+                break;
+            case DATE:
+                json.value(Instant.ofEpochMilli(primitives[slot]).toString());
+                break;
+            case STRING:
+            case URL:
+                json.value((String) objects[slot]);
+                break;
+            default:
+                json.value((ModelNode) objects[slot]);
+        }
+    }
+
+    private static void validateSimpleValue(AttributeType type, String attributeName, ModelNode value) {
+        switch (type) {
+            case BOOLEAN:
+                value.asBoolean();
+                break;
+            case DOUBLE:
+            case FLOAT:
+                value.asDouble();
+                break;
+            case INT:
+                value.asInt();
+                break;
+            case LONG:
+                value.asLong();
+                break;
+            case DATE:
+                toDate(attributeName, value);
+                break;
+            case STRING:
+                value.asString();
+                break;
+            case URL:
+                validateUrl(attributeName, value.asString());
+                break;
+            default:
+                throw new IllegalStateException("Unknown type " + type);
+        }
+    }
+
+    private static String validateUrl(String attributeName, String value) {
+        try {
+            new URL(value);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("'" + attributeName + "' is not a valid URL");
+        }
+        return value;
+    }
+
+    private static long toDate(String attributeName, ModelNode value) {
+        if (value.getType() == ModelType.LONG || value.getType() == ModelType.INT) {
+            return value.asLong();
+        }
+        try {
+            return OffsetDateTime.parse(value.asString()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalStateException("'" + attributeName + "' is not a valid RFC 3339 date");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+
+/**
+ * A {@link RangeStatistic} whose value is meant to stay within fixed bounds, following the BoundedRangeStatistic interface of
+ * JSR 77. The bounds are those of the {@link StatisticDefinition}.
+ */
+public class BoundedRangeStatistic extends RangeStatistic {
+
+    BoundedRangeStatistic(StatisticDefinition definition, Statistics owner, long startTime, RangeStatistic parent) {
+        super(definition, owner, startTime, parent);
+    }
+
+    public long getLowerBound() {
+        return getDefinition().getLowerBound();
+    }
+
+    public long getUpperBound() {
+        return getDefinition().getUpperBound();
+    }
+
+    @Override
+    StatisticDefinition.Kind getKind() {
+        return StatisticDefinition.Kind.BOUNDED_RANGE;
+    }
+
+    @Override
+    int getValueCount() {
+        return super.getValueCount() + 2;
+    }
+
+    @Override
+    void writeValues(JsonWriter json) throws IOException {
+        super.writeValues(json);
+        json.name("lower-bound").value(getLowerBound());
+        json.name("upper-bound").value(getUpperBound());
+    }
+}
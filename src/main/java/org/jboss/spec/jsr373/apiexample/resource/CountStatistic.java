@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts something, following the CountStatistic interface of JSR 77.
+ */
+public class CountStatistic extends Statistic {
+    private static final String[] HISTORY_VALUE_NAMES = {"count"};
+
+    private final LongAdder count = new LongAdder();
+    private final CountStatistic parent;
+
+    CountStatistic(StatisticDefinition definition, Statistics owner, long startTime, CountStatistic parent) {
+        super(definition, owner, startTime);
+        this.parent = parent;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+        recorded();
+        if (parent != null) {
+            parent.add(amount);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    String[] getHistoryValueNames() {
+        return HISTORY_VALUE_NAMES;
+    }
+
+    @Override
+    void readHistoryValues(long[] values) {
+        values[0] = getCount();
+    }
+
+    @Override
+    int getValueCount() {
+        return 1;
+    }
+
+    @Override
+    void writeValues(JsonWriter json) throws IOException {
+        json.name("count").value(getCount());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values along the lines of HdrHistogram. Values below {@code 2 * SUB_BUCKETS} get a
+ * bucket each, and above that each power of two is split into {@code SUB_BUCKETS} buckets. So any value can be told
+ * apart from the values more than 1/{@code SUB_BUCKETS} (i.e. under 1%) away from it, with a fixed number of
+ * buckets. Recording a value is a single atomic increment, so it never waits for other threads.
+ * <p/>
+ * The counts are read one at a time, so a reader racing with the recording may miss the most recent values.
+ */
+class Histogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Values below this get a bucket each
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int BUCKETS = LINEAR_LIMIT + (Long.SIZE - SUB_BUCKET_BITS - 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        counts.getAndIncrement(getIndex(value));
+    }
+
+    /**
+     * Gets the values at some percentiles of the recorded values, taking a single pass over the counts. Each value is
+     * the highest one which falls in the same bucket as the value at the percentile.
+     *
+     * @param percentiles the percentiles, between 0 and 100 and in ascending order
+     * @return the values in the same order, which are all {@code 0} if no values have been recorded
+     */
+    long[] getValuesAtPercentiles(double... percentiles) {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        final long[] values = new long[percentiles.length];
+        if (total == 0) {
+            return values;
+        }
+        int bucket = 0;
+        long seen = snapshot[0];
+        for (int p = 0; p < percentiles.length; p++) {
+            if (percentiles[p] < 0 || percentiles[p] > 100 || (p > 0 && percentiles[p] < percentiles[p - 1])) {
+                throw new IllegalArgumentException("Bad percentile " + percentiles[p]);
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * total));
+            while (seen < rank && bucket < BUCKETS - 1) {
+                seen += snapshot[++bucket];
+            }
+            values[p] = getHighestValue(bucket);
+        }
+        return values;
+    }
+
+    static int getIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        //Shift the value down so that it fits in [SUB_BUCKETS, LINEAR_LIMIT)
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long getHighestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        final int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        final long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        final long highest = ((subBucket + 1) << shift) - 1;
+        //The last bucket goes up to Long.MAX_VALUE, which the shift overflows
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
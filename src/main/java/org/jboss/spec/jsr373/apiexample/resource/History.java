@@ -0,0 +1,244 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The recent history of the values of a {@link Statistic}, sampled once a second by the {@link HistorySampler}. The
+ * samples go into rings of fixed size, one per tier, where each tier keeps the last sample taken in each of its
+ * buckets: one second buckets for the last 5 minutes, one minute buckets for the last hour and ten minute buckets for
+ * the last day. Since the values sampled are totals or current values, the last sample of a bucket is all a coarser
+ * tier needs; the change over any period is the difference between two samples.
+ * <p/>
+ * All the memory is allocated up front, {@value #TOTAL_SLOTS} slots of one {@code long} for the bucket plus one per
+ * value, i.e. 8 KB for a statistic with one value and 12 KB for one with two. Recording a sample does not allocate,
+ * and the threads recording the values of the statistic never touch the history at all. There is only ever one thread
+ * writing to a history, and readers retry if they see it part way through a sample.
+ */
+class History {
+    /** The most values a statistic keeps a history of */
+    static final int MAX_VALUES = 2;
+
+    //The seconds per bucket, and the number of buckets, of each tier
+    private static final int[] RESOLUTIONS = {1, 60, 600};
+    private static final int[] SLOTS = {300, 60, 144};
+    private static final int[] OFFSETS = {0, 300, 360};
+    static final int TOTAL_SLOTS = 504;
+    //The seconds covered by the coarsest tier, which is as far apart as two samples can usefully be
+    static final long MAX_STEP = 600 * 144;
+
+    private final int valueCount;
+    private final int stride;
+    //For each slot the bucket plus one, so that 0 means the slot is empty, followed by the values
+    private final AtomicLongArray slots;
+    //Odd while a sample is being recorded
+    private volatile long writes;
+
+    History(int valueCount) {
+        if (valueCount > MAX_VALUES) {
+            throw new IllegalArgumentException("At most " + MAX_VALUES + " values can be kept: " + valueCount);
+        }
+        this.valueCount = valueCount;
+        this.stride = 1 + valueCount;
+        this.slots = new AtomicLongArray(TOTAL_SLOTS * stride);
+    }
+
+    /**
+     * Records a sample in all the tiers. Must only be called by one thread.
+     *
+     * @param second the time of the sample, in seconds since the epoch
+     * @param values the values
+     */
+    void record(long second, long[] values) {
+        //Only one thread writes, so the increments need not be atomic
+        writes = writes + 1;
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            final long bucket = second / RESOLUTIONS[tier];
+            final int base = (OFFSETS[tier] + (int) (bucket % SLOTS[tier])) * stride;
+            slots.set(base, bucket + 1);
+            for (int i = 0; i < valueCount; i++) {
+                slots.set(base + 1 + i, values[i]);
+            }
+        }
+        writes = writes + 1;
+    }
+
+    /**
+     * Reads the values of the last sample in a tier taken at or before a time.
+     *
+     * @param tier the tier
+     * @param second the time, in seconds since the epoch
+     * @param values the array to read the values into
+     * @return {@code false} if there is no such sample, i.e. the values were still at {@code 0} at the time
+     */
+    boolean read(int tier, long second, long[] values) {
+        final long bucket = second / RESOLUTIONS[tier];
+        while (true) {
+            final long before = writes;
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            final boolean found = find(tier, bucket, values);
+            if (writes == before) {
+                return found;
+            }
+        }
+    }
+
+    private boolean find(int tier, long bucket, long[] values) {
+        //Buckets only get skipped if the sampler falls behind, so this hardly ever goes back more than one
+        for (int back = 0; back < SLOTS[tier] && bucket - back >= 0; back++) {
+            final long current = bucket - back;
+            final int base = (OFFSETS[tier] + (int) (current % SLOTS[tier])) * stride;
+            if (slots.get(base) == current + 1) {
+                for (int i = 0; i < valueCount; i++) {
+                    values[i] = slots.get(base + 1 + i);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out which samples to return for a request for the history between two times.
+     *
+     * @param now the current time, in milliseconds since the epoch
+     * @param from the start of the period, in milliseconds since the epoch
+     * @param to the end of the period, in milliseconds since the epoch
+     * @param step the seconds between the samples, or {@code 0} to use the resolution of the tier covering the period
+     * @return the samples to return
+     * @throws IllegalArgumentException if the period is empty or would need too many samples, or the step is negative
+     *                                  or longer than {@value #MAX_STEP} seconds
+     */
+    static Query createQuery(long now, long from, long to, long step) {
+        if (from > to) {
+            throw new IllegalArgumentException("'from' is after 'to'");
+        }
+        if (step < 0 || step > MAX_STEP) {
+            throw new IllegalArgumentException("'step' must be between 0, for the resolution of the history, and " +
+                    MAX_STEP + " seconds");
+        }
+        //The finest tier which goes back far enough, or else the coarsest one which goes back as far as possible. This
+        //goes by the milliseconds, since rounding 'from' up to a second would make a period of exactly the length of a
+        //tier look one second longer whenever 'now' is on a second
+        int tier = 0;
+        while (tier < RESOLUTIONS.length - 1 && from < now - (long) RESOLUTIONS[tier] * SLOTS[tier] * 1000) {
+            tier++;
+        }
+        final long nowSecond = now / 1000;
+        final long toSecond = Math.min(to, now) / 1000;
+        //Rounded up, without the overflow of adding 999 first
+        long fromSecond = from / 1000;
+        if (fromSecond * 1000 < from) {
+            fromSecond++;
+        }
+        final long resolution = RESOLUTIONS[tier];
+        fromSecond = Math.max(fromSecond, nowSecond - resolution * (SLOTS[tier] - 1));
+        step = Math.max(step, resolution);
+        //Start on a multiple of the step, so that asking again later returns the same times for the same samples
+        final long first = (fromSecond + step - 1) / step * step;
+        final long count = first > toSecond ? 0 : (toSecond - first) / step + 1;
+        if (count > Query.MAX_SAMPLES) {
+            throw new IllegalArgumentException("The period would need " + count + " samples, the most is " +
+                    Query.MAX_SAMPLES + ". Use a bigger 'step'");
+        }
+        return new Query(tier, (int) resolution, first, step, (int) count);
+    }
+
+    /**
+     * The samples to return for a request for the history between two times.
+     */
+    static class Query {
+        static final int MAX_SAMPLES = 1000;
+
+        private final int tier;
+        private final int resolution;
+        private final long first;
+        private final long step;
+        private final int count;
+
+        private Query(int tier, int resolution, long first, long step, int count) {
+            this.tier = tier;
+            this.resolution = resolution;
+            this.first = first;
+            this.step = step;
+            this.count = count;
+        }
+
+        /**
+         * @return the seconds per bucket of the tier the samples come from
+         */
+        int getResolution() {
+            return resolution;
+        }
+
+        long getStep() {
+            return step;
+        }
+
+        /**
+         * @return the time of the first sample, in seconds since the epoch
+         */
+        long getFirst() {
+            return first;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * Writes the samples as a list of objects with the time and the values. The values for a time are those of the
+         * last sample taken in the bucket of the tier which the time falls in, so for the bucket still being filled
+         * they are the latest values.
+         *
+         * @param json the writer
+         * @param history the history, or {@code null} if nothing has been sampled into it yet
+         * @param names the names of the values
+         */
+        void writeSamples(JsonWriter json, History history, String[] names) throws IOException {
+            final long[] values = new long[names.length];
+            json.beginList(count);
+            for (int i = 0; i < count; i++) {
+                final long second = first + i * step;
+                if (history == null || !history.read(tier, second, values)) {
+                    //Nothing had been recorded yet
+                    for (int j = 0; j < values.length; j++) {
+                        values[j] = 0;
+                    }
+                }
+                json.beginObject(1 + names.length);
+                json.name("time").value(Statistic.formatTime(second * 1000));
+                for (int j = 0; j < names.length; j++) {
+                    json.name(names[j]).value(values[j]);
+                }
+                json.endObject();
+            }
+            json.endList();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the statistics of the instances served while the application is running into their {@link History} once a
+ * second, on a background thread. {@link Statistics} get registered the first time a value is recorded in them, so
+ * only those actually in use get sampled, and generating a model does not keep hold of its statistics.
+ */
+public final class HistorySampler {
+    private static final HistorySampler INSTANCE = new HistorySampler();
+
+    private final Set<Statistics> sampled = ConcurrentHashMap.newKeySet();
+    //Only used by the sampler thread, so that sampling does not allocate
+    private final long[] values = new long[History.MAX_VALUES];
+    private ScheduledExecutorService executor;
+
+    private HistorySampler() {
+    }
+
+    public static HistorySampler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers statistics to be sampled.
+     *
+     * @param statistics the statistics, which have had a value recorded in them
+     */
+    void add(Statistics statistics) {
+        sampled.add(statistics);
+    }
+
+    /**
+     * Starts sampling in the background unless that is already happening.
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "jsr373-history-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            //The finest tier of the histories has one bucket per second
+            executor.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops sampling in the background. The histories stay available, and sampling starts again on the next call to
+     * {@link #start()}.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void sample() {
+        final long second = System.currentTimeMillis() / 1000;
+        for (Statistics statistics : sampled) {
+            for (Statistic statistic : statistics.getStatistics()) {
+                statistic.sampleHistory(second, values);
+            }
+        }
+    }
+}
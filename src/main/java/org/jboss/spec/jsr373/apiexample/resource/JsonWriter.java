@@ -0,0 +1,309 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Writes json straight to a {@code Writer}, laid out exactly like {@link ModelNode#writeJSONString} with
+ * {@code compact=false} would, but without building a {@code ModelNode} tree first. That layout depends on the number
+ * of entries in an object or list (with only one entry it stays on the same line), so the number of entries is
+ * passed in when starting one. Instances are not thread safe, but may be reused for several documents one after the
+ * other by calling {@link #setWriter(Writer)}.
+ */
+class JsonWriter {
+    private static final int BUFFER_SIZE = 2048;
+    private static final String INDENT = "    ";
+
+    private Writer writer;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+
+    //The state of the currently open objects and lists, indexed by depth
+    private int[] sizes = new int[16];
+    private int[] counts = new int[16];
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    //The number of open multi-line containers, which is what determines the indentation
+    private int indent;
+    private boolean afterName;
+
+    JsonWriter() {
+    }
+
+    JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Sets the writer the next document is written to.
+     *
+     * @param writer the writer
+     * @return this json writer
+     */
+    JsonWriter setWriter(Writer writer) {
+        if (depth != 0 || position != 0) {
+            throw new IllegalStateException("The previous document has not been flushed");
+        }
+        this.writer = writer;
+        return this;
+    }
+
+    JsonWriter beginObject(int entries) throws IOException {
+        return begin('{', entries, true);
+    }
+
+    JsonWriter endObject() throws IOException {
+        return end('}', true);
+    }
+
+    JsonWriter beginList(int entries) throws IOException {
+        return begin('[', entries, false);
+    }
+
+    JsonWriter endList() throws IOException {
+        return end(']', false);
+    }
+
+    JsonWriter name(String name) throws IOException {
+        if (depth == 0 || !objects[depth] || afterName) {
+            throw new IllegalStateException("A name is only allowed for the entries of an object");
+        }
+        beforeEntry();
+        //ModelNode only escapes quotes and backslashes in keys
+        write('"');
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\');
+            }
+            write(c);
+        }
+        write("\" : ");
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        beforeValue();
+        write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    write("\\\"");
+                    break;
+                case '\\':
+                    write("\\\\");
+                    break;
+                case '\b':
+                    write("\\b");
+                    break;
+                case '\f':
+                    write("\\f");
+                    break;
+                case '\n':
+                    write("\\n");
+                    break;
+                case '\r':
+                    write("\\r");
+                    break;
+                case '\t':
+                    write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        write("\\u00");
+                        write(Character.toUpperCase(Character.forDigit(c >> 4, 16)));
+                        write(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+                    } else {
+                        write(c);
+                    }
+            }
+        }
+        write('"');
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        write(value ? "true" : "false");
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        beforeValue();
+        write(Long.toString(value));
+        return this;
+    }
+
+    JsonWriter value(double value) throws IOException {
+        beforeValue();
+        //The same as a ModelNode of type DOUBLE
+        write(Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a value which has already been encoded as json. It must not span several lines, since it is not
+     * indented.
+     *
+     * @param json the json of the value
+     * @return this writer
+     */
+    JsonWriter encodedValue(String json) throws IOException {
+        beforeValue();
+        write(json);
+        return this;
+    }
+
+    JsonWriter value(ModelNode value) throws IOException {
+        switch (value.getType()) {
+            case STRING:
+                return value(value.asString());
+            case BOOLEAN:
+                return value(value.asBoolean());
+            case INT:
+            case LONG:
+                return value(value.asLong());
+            default:
+                //Uncommon, so just let the ModelNode format it and indent the result to where we are
+                beforeValue();
+                final String json = value.toJSONString(false);
+                for (int i = 0; i < json.length(); i++) {
+                    final char c = json.charAt(i);
+                    write(c);
+                    if (c == '\n') {
+                        writeIndent();
+                    }
+                }
+                return this;
+        }
+    }
+
+    /**
+     * Writes out anything buffered to the underlying writer. This must be called once the document is complete.
+     */
+    void flush() throws IOException {
+        if (depth != 0) {
+            throw new IllegalStateException("Not all objects and lists have been ended");
+        }
+        writer.write(buffer, 0, position);
+        position = 0;
+        writer.flush();
+    }
+
+    private JsonWriter begin(char c, int entries, boolean object) throws IOException {
+        beforeValue();
+        write(c);
+        if (++depth == sizes.length) {
+            sizes = Arrays.copyOf(sizes, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+            objects = Arrays.copyOf(objects, depth * 2);
+        }
+        sizes[depth] = entries;
+        counts[depth] = 0;
+        objects[depth] = object;
+        if (entries > 1) {
+            indent++;
+        }
+        return this;
+    }
+
+    private JsonWriter end(char c, boolean object) throws IOException {
+        if (depth == 0 || objects[depth] != object || afterName) {
+            throw new IllegalStateException("Nothing to end");
+        }
+        if (counts[depth] != sizes[depth]) {
+            throw new IllegalStateException("Expected " + sizes[depth] + " entries but got " + counts[depth]);
+        }
+        if (sizes[depth] > 1) {
+            indent--;
+            write('\n');
+            writeIndent();
+        }
+        write(c);
+        depth--;
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (depth > 0) {
+            if (objects[depth]) {
+                throw new IllegalStateException("The entries of an object need a name");
+            }
+            beforeEntry();
+        }
+    }
+
+    private void beforeEntry() throws IOException {
+        final int count = counts[depth]++;
+        if (count == sizes[depth]) {
+            throw new IllegalStateException("Expected only " + sizes[depth] + " entries");
+        }
+        if (sizes[depth] > 1) {
+            if (count > 0) {
+                write(',');
+            }
+            write('\n');
+            writeIndent();
+        }
+    }
+
+    private void writeIndent() throws IOException {
+        for (int i = 0; i < indent; i++) {
+            write(INDENT);
+        }
+    }
+
+    private void write(String s) throws IOException {
+        final int length = s.length();
+        if (position + length > buffer.length) {
+            drain();
+            if (length > buffer.length) {
+                writer.write(s);
+                return;
+            }
+        }
+        s.getChars(0, length, buffer, position);
+        position += length;
+    }
+
+    private void write(char c) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = c;
+    }
+
+    private void drain() throws IOException {
+        writer.write(buffer, 0, position);
+        position = 0;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * The current value of something, along with the highest and lowest values it has had, following the
+ * RangeStatistic interface of JSR 77. The value starts off at {@code 0}.
+ * <p/>
+ * Unlike the counts, the water marks need to see every value the current value goes through, so the current value
+ * is updated by compare-and-set rather than striped.
+ */
+public class RangeStatistic extends Statistic {
+    private static final String[] HISTORY_VALUE_NAMES = {"current"};
+
+    private final AtomicLong current = new AtomicLong();
+    private final LongAccumulator highWaterMark = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator lowWaterMark = new LongAccumulator(Math::min, 0);
+    private final RangeStatistic parent;
+
+    RangeStatistic(StatisticDefinition definition, Statistics owner, long startTime, RangeStatistic parent) {
+        super(definition, owner, startTime);
+        this.parent = parent;
+    }
+
+    public void set(long value) {
+        final long previous = current.getAndSet(value);
+        marks(value);
+        if (parent != null) {
+            //The roll-up holds the sum of the current values, so it only needs the change
+            parent.add(value - previous);
+        }
+    }
+
+    public void add(long delta) {
+        marks(current.addAndGet(delta));
+        if (parent != null) {
+            parent.add(delta);
+        }
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    private void marks(long value) {
+        highWaterMark.accumulate(value);
+        lowWaterMark.accumulate(value);
+        recorded();
+    }
+
+    public long getCurrent() {
+        return current.get();
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public long getLowWaterMark() {
+        return lowWaterMark.get();
+    }
+
+    @Override
+    StatisticDefinition.Kind getKind() {
+        return StatisticDefinition.Kind.RANGE;
+    }
+
+    @Override
+    String[] getHistoryValueNames() {
+        return HISTORY_VALUE_NAMES;
+    }
+
+    @Override
+    void readHistoryValues(long[] values) {
+        values[0] = getCurrent();
+    }
+
+    @Override
+    int getValueCount() {
+        return 3;
+    }
+
+    @Override
+    void writeValues(JsonWriter json) throws IOException {
+        json.name("current").value(getCurrent());
+        json.name("high-water-mark").value(getHighWaterMark());
+        json.name("low-water-mark").value(getLowWaterMark());
+    }
+}
@@ -24,17 +24,20 @@ package org.jboss.spec.jsr373.apiexample.resource;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.net.MalformedURLException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.jboss.dmr.ModelNode;
-import org.jboss.dmr.ModelType;
 import org.jboss.spec.jsr373.apiexample.UrlUtil;
 import org.jboss.spec.jsr373.apiexample.resource.objects.ManagedObjectType;
 
@@ -42,22 +45,36 @@ import org.jboss.spec.jsr373.apiexample.resource.objects.ManagedObjectType;
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 public class ResourceInstance {
+    private static final String NAME = "name";
+
     private final UrlUtil urlUtil;
-    private final URL url;
+    private final String path;
     private final ResourceTemplate template;
     private final ResourceInstance parent;
     private final String name;
-    private final Map<String, ModelNode> attributes;
+    private final AttributeValues attributes;
     private final Map<String, Set<ResourceInstance>> children = new LinkedHashMap<>();
-
-    private ResourceInstance(UrlUtil urlUtil, URL url, ResourceTemplate template, ResourceInstance parent,
-                             String name, Map<String, ModelNode> attributes) throws IOException, URISyntaxException {
+    //Only set if the template has statistics
+    private final Statistics statistics;
+    //Only set if the templates of any of the instances under this one have statistics
+    private final RollUps rollUps;
+    private final String statisticsPath;
+    //Whether the document gets the current values of the live attributes of the type
+    private final boolean live;
+
+    private ResourceInstance(UrlUtil urlUtil, String path, ResourceTemplate template, ResourceInstance parent,
+                             String name, AttributeValues attributes, Statistics statistics, RollUps rollUps,
+                             boolean live) throws IOException, URISyntaxException {
         this.urlUtil = urlUtil;
-        this.url = url;
+        this.path = path;
         this.template = template;
         this.parent = parent;
         this.name = name;
         this.attributes = attributes;
+        this.statistics = statistics;
+        this.rollUps = rollUps;
+        this.statisticsPath = statistics == null && rollUps == null ? null : urlUtil.createStatisticsPath(path);
+        this.live = live;
     }
 
     static Builder createRootBuilder(UrlUtil urlUtil, ResourceTemplate template, String name) throws IOException, URISyntaxException {
@@ -65,54 +82,210 @@ public class ResourceInstance {
         return builder;
     }
 
-    URL getUrl() {
-       return url;
+    String getPath() {
+       return path;
+    }
+
+    /**
+     * Gets the statistics to record the values of this instance in.
+     *
+     * @return the statistics, or {@code null} if the instance is not a statistics provider
+     */
+    public Statistics getStatistics() {
+        return statistics;
     }
 
     public void serialize() throws IOException {
         if (parent != null) {
             throw new IllegalStateException("Can only serialize a parent");
         }
-        internalSerialize();
+        internalSerialize(new HashSet<>(), new JsonWriter());
+    }
+
+    /**
+     * Serializes this instance and its children using a fork/join pool. Each child with children of its own is
+     * serialized as a separate task, while leaf children are written by the task of their parent. Every document is
+     * written exactly once, and since a document only depends on its own instance the output is the same as for
+     * {@link #serialize()}. The {@code UrlUtil} writers must be safe to use from several threads.
+     *
+     * @param pool the pool to run the serialization in
+     */
+    public void serialize(ForkJoinPool pool) throws IOException {
+        if (parent != null) {
+            throw new IllegalStateException("Can only serialize a parent");
+        }
+        try {
+            pool.invoke(new SerializeTask(this, ConcurrentHashMap.newKeySet()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void internalSerialize(Set<ResourceInstance> serialized, JsonWriter json) throws IOException {
+        if (!writeDocument(serialized, json)) {
+            return;
+        }
+        for (Set<ResourceInstance> childSet : children.values()) {
+            for (ResourceInstance instance : childSet) {
+                instance.internalSerialize(serialized, json);
+            }
+        }
     }
 
-    private void internalSerialize() throws IOException {
-        ModelNode output = new ModelNode();
-        ModelNode item = output.get(template.getResourceTypeName());
-        addLink(item, "self", url);
-        addLink(item, "help", template.getUrl());
+    /**
+     * Writes the document for this instance, unless it has already been written. Children such as the jvms are
+     * shared by several parents, so they get reached more than once.
+     *
+     * @param serialized the instances written so far
+     * @param json the json writer to use
+     * @return {@code true} if the document was written, {@code false} if it had already been written
+     */
+    private boolean writeDocument(Set<ResourceInstance> serialized, JsonWriter json) throws IOException {
+        if (!serialized.add(this)) {
+            return false;
+        }
+        writeDocument(json);
+        return true;
+    }
 
-        item.get("name").set(name);
-        for (Map.Entry<String, ModelNode> entry : attributes.entrySet()) {
-            item.get(entry.getKey()).set(entry.getValue());
+    private void writeDocument(JsonWriter json) throws IOException {
+        writeStatisticsDocument(json);
+        final ManagedObjectType type = template.getResourceType();
+        if (!live) {
+            //The live attributes are nillable, and left undefined
+            try (final PrintWriter exampleWriter = urlUtil.getWriter(path)) {
+                writeDocument(exampleWriter, json, attributes);
+            }
+            return;
+        }
+        //The live values get set on a copy each time the document is rendered, so freeze the ones which stay the same
+        attributes.freeze();
+        try (final PrintWriter exampleWriter = urlUtil.getWriter(path)) {
+            writeDocument(exampleWriter, json, getLiveAttributeValues(type));
         }
+        urlUtil.addLiveDocument(path, new LiveInstanceDocument(type));
+    }
 
+    private void writeStatisticsDocument(JsonWriter json) throws IOException {
+        if (statisticsPath == null) {
+            return;
+        }
+        try (final PrintWriter exampleWriter = urlUtil.getWriter(statisticsPath)) {
+            writeStatisticsDocument(exampleWriter, json);
+        }
+        urlUtil.addLiveDocument(statisticsPath, new LiveStatisticsDocument());
+        urlUtil.addStatisticsHistory(statisticsPath, new StatisticsHistory(statistics, rollUps));
+    }
+
+    private AttributeValues getLiveAttributeValues(ManagedObjectType type) {
+        final AttributeValues values = attributes.copy();
+        final AttributeLayout layout = values.getLayout();
+        type.setLiveAttributeValues((attributeName, value) -> {
+            final int ordinal = layout.getOrdinal(attributeName);
+            if (ordinal < 0) {
+                throw new IllegalArgumentException("Unknown live attribute '" + attributeName + "' for " + type.getName());
+            }
+            values.set(ordinal, value);
+        });
+        return values;
+    }
+
+    private void writeDocument(PrintWriter writer, JsonWriter json, AttributeValues attributes) throws IOException {
+        json.setWriter(writer);
+        json.beginObject(1).name(template.getResourceTypeName());
+        json.beginObject(countEntries(attributes));
+        json.name("links").beginList(statisticsPath == null ? 2 : 3);
+        writeLink(json, "self", urlUtil.toHref(path));
+        writeLink(json, "help", template.getHref());
+        if (statisticsPath != null) {
+            writeLink(json, ResourceTemplate.STATISTICS, urlUtil.toHref(statisticsPath));
+        }
+        json.endList();
+
+        final AttributeLayout layout = attributes.getLayout();
+        final int nameOrdinal = layout.getOrdinal(NAME);
+        json.name(NAME);
+        if (nameOrdinal < 0 || !attributes.isDefined(nameOrdinal)) {
+            json.value(name);
+        } else {
+            attributes.write(nameOrdinal, json);
+        }
+        for (int ordinal = 0; ordinal < layout.size(); ordinal++) {
+            if (ordinal == nameOrdinal || !attributes.isDefined(ordinal)) {
+                continue;
+            }
+            //An attribute which is also used for children gets replaced by the links to the children
+            final String attributeName = layout.getName(ordinal);
+            final Set<ResourceInstance> childSet = children.get(attributeName);
+            if (childSet == null) {
+                json.name(attributeName);
+                attributes.write(ordinal, json);
+            } else {
+                writeChildLinks(json, attributeName, childSet);
+            }
+        }
         for (Map.Entry<String, Set<ResourceInstance>> child : children.entrySet()) {
-            ModelNode list = item.get(child.getKey()).setEmptyList();
-            for (ResourceInstance resourceInstance : child.getValue()) {
-                ModelNode link = new ModelNode();
-                link.get("rel").set(resourceInstance.template.getUrl().toExternalForm());
-                link.get("href").set(resourceInstance.getUrl().toExternalForm());
-                list.add(link);
+            if (!isAttributeDefined(attributes, child.getKey())) {
+                writeChildLinks(json, child.getKey(), child.getValue());
             }
         }
+        json.endObject().endObject();
+        json.flush();
+    }
 
-        try (final PrintWriter exampleWriter = urlUtil.getWriter(url)) {
-            output.writeJSONString(exampleWriter, false);
+    private void writeStatisticsDocument(PrintWriter writer, JsonWriter json) throws IOException {
+        json.setWriter(writer);
+        //Named after the Stats interfaces of JSR 77, e.g. ServletStats
+        json.beginObject(1).name(template.getResourceTypeName() + "Stats");
+        json.beginObject(1 + (statistics == null ? 0 : 1) + (rollUps == null ? 0 : 1));
+        json.name("links").beginList(2);
+        writeLink(json, "self", urlUtil.toHref(statisticsPath));
+        writeLink(json, "parent", urlUtil.toHref(path));
+        json.endList();
+        if (statistics != null) {
+            json.name(ResourceTemplate.STATISTICS);
+            statistics.writeJson(json);
         }
+        if (rollUps != null) {
+            json.name(ResourceTemplate.ROLL_UPS);
+            rollUps.writeJson(json);
+        }
+        json.endObject().endObject();
+        json.flush();
+    }
 
-        for (Set<ResourceInstance> childSet : children.values()) {
-            for (ResourceInstance instance : childSet) {
-                instance.internalSerialize();
+    private int countEntries(AttributeValues attributes) {
+        //links and name
+        int entries = 2 + attributes.getDefinedCount();
+        if (isAttributeDefined(attributes, NAME)) {
+            entries--;
+        }
+        for (String child : children.keySet()) {
+            if (!isAttributeDefined(attributes, child)) {
+                entries++;
             }
         }
+        return entries;
+    }
+
+    private static boolean isAttributeDefined(AttributeValues attributes, String name) {
+        final int ordinal = attributes.getLayout().getOrdinal(name);
+        return ordinal >= 0 && attributes.isDefined(ordinal);
+    }
+
+    private void writeChildLinks(JsonWriter json, String attributeName, Set<ResourceInstance> childSet) throws IOException {
+        json.name(attributeName).beginList(childSet.size());
+        for (ResourceInstance resourceInstance : childSet) {
+            writeLink(json, resourceInstance.template.getHref(), urlUtil.toHref(resourceInstance.path));
+        }
+        json.endList();
     }
 
-    private void addLink(ModelNode output, String rel, URL url) {
-        ModelNode link = new ModelNode();
-        link.get("rel").set(rel);
-        link.get("href").set(url.toExternalForm());
-        output.get("links").add(link);
+    private void writeLink(JsonWriter json, String rel, String href) throws IOException {
+        json.beginObject(2);
+        json.name("rel").value(rel);
+        json.name("href").value(href);
+        json.endObject();
     }
 
     private void addChild(ResourceInstance instance) {
@@ -125,15 +298,93 @@ public class ResourceInstance {
         childInstances.add(instance);
     }
 
+    /**
+     * Renders the document of a live instance again with the latest values. The attributes are frozen and the
+     * children no longer change, so this can be used from several threads at once.
+     */
+    private class LiveInstanceDocument implements UrlUtil.LiveDocument {
+        private final ManagedObjectType type;
+
+        LiveInstanceDocument(ManagedObjectType type) {
+            this.type = type;
+        }
+
+        @Override
+        public long getVersion() {
+            return type.getLiveVersion();
+        }
+
+        @Override
+        public void write(PrintWriter writer) throws IOException {
+            writeDocument(writer, new JsonWriter(), getLiveAttributeValues(type));
+        }
+    }
+
+    /**
+     * Renders the statistics document again once something has been recorded.
+     */
+    private class LiveStatisticsDocument implements UrlUtil.LiveDocument {
+        @Override
+        public long getVersion() {
+            //Both only ever go up, so the sum changes whenever either does
+            return (statistics == null ? 0 : statistics.getVersion()) + (rollUps == null ? 0 : rollUps.getVersion());
+        }
+
+        @Override
+        public void write(PrintWriter writer) throws IOException {
+            writeStatisticsDocument(writer, new JsonWriter());
+        }
+    }
+
+    private static class SerializeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ResourceInstance instance;
+        private final Set<ResourceInstance> serialized;
+
+        SerializeTask(ResourceInstance instance, Set<ResourceInstance> serialized) {
+            this.instance = instance;
+            this.serialized = serialized;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                final JsonWriter json = new JsonWriter();
+                if (!instance.writeDocument(serialized, json)) {
+                    return;
+                }
+                List<SerializeTask> subtasks = new ArrayList<>();
+                for (Set<ResourceInstance> childSet : instance.children.values()) {
+                    for (ResourceInstance child : childSet) {
+                        if (child.children.isEmpty()) {
+                            child.writeDocument(serialized, json);
+                        } else {
+                            subtasks.add(new SerializeTask(child, serialized));
+                        }
+                    }
+                }
+                invokeAll(subtasks);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     public static class Builder {
         private final UrlUtil urlUtil;
         private final ResourceTemplate template;
         private final ResourceInstance.Builder parent;
         private final String name;
-        private final Map<String, ModelNode> attributes = new LinkedHashMap<>();
+        private AttributeValues attributes;
         private final Map<String, Set<Builder>> children = new LinkedHashMap<>();
-        private final URL url;
+        private final String path;
+        //Created up front, since the ones of the children get linked to them before this instance gets built
+        private final Statistics statistics;
+        private final RollUps rollUps;
         private volatile ResourceInstance builtInstance;
+        private boolean completed;
+        private boolean live;
 
 
         private Builder(UrlUtil urlUtil, ResourceTemplate template, String name) throws IOException, URISyntaxException {
@@ -145,12 +396,49 @@ public class ResourceInstance {
             this.template = template;
             this.parent = parent;
             this.name = name;
-            url = urlUtil.createInstanceUrl(attributeName, parent == null ? null : parent.url, name);
-            template.getResourceType().setDefaultAttributeValues(this);
+            this.attributes = template.getDefaultAttributeValues();
+            path = urlUtil.createInstancePath(attributeName, parent == null ? null : parent.path, name);
+            //Rolled up into the parent this was created under, not into the others it may get added to
+            final RollUps parentRollUps = parent == null ? null : parent.rollUps;
+            statistics = template.createStatistics(parentRollUps);
+            rollUps = template.createRollUps(parentRollUps);
         }
 
+        /**
+         * Sets the value of an attribute, overriding the default value from the template. The value is validated and
+         * converted to the type of the attribute straight away. An undefined value clears the attribute.
+         *
+         * @param name the name of the attribute
+         * @param value the value
+         * @return this builder
+         */
         public Builder setAttribute(String name, ModelNode value) {
-            attributes.put(name, value);
+            final int ordinal = template.getAttributeLayout().getOrdinal(name);
+            if (ordinal < 0) {
+                throw new IllegalStateException("The instance tries to use an attribute '" + name +
+                        "' which does not exist in the template for " + template.getResourceTypeName());
+            }
+            if (attributes.isFrozen()) {
+                //Still the shared defaults
+                attributes = attributes.copy();
+            }
+            attributes.set(ordinal, value);
+            return this;
+        }
+
+        /**
+         * Makes the document of the instance get the current values of the live attributes of its type, rather than
+         * leaving them undefined. Only an instance standing for something in the running process should be live, such
+         * as the jvm of the management servlet; the values would be made up for any other.
+         *
+         * @return this builder
+         * @see ManagedObjectType#isLive()
+         */
+        public Builder setLive() {
+            if (!template.getResourceType().isLive()) {
+                throw new IllegalStateException(template.getResourceTypeName() + " has no live attributes");
+            }
+            live = true;
             return this;
         }
 
@@ -179,6 +467,9 @@ public class ResourceInstance {
         }
 
         private void addChildBuilder(Builder childBuilder) {
+            if (completed) {
+                throw new IllegalStateException(path + " has already been completed");
+            }
             if (!childBuilder.template.isValidParent(template)) {
                 throw new IllegalArgumentException("Bad child type");
             }
@@ -196,40 +487,66 @@ public class ResourceInstance {
             if (parent != null) {
                 throw new IllegalStateException("Can only be called on the root instances");
             }
+            if (completed) {
+                throw new IllegalStateException(path + " has already been completed");
+            }
             return buildInternal(null);
         }
 
+        /**
+         * Validates and serializes this instance and all the instances under it which have not been completed yet,
+         * and then releases them. This is the streaming alternative to calling {@link #build()} and
+         * {@link ResourceInstance#serialize()} on the root: by completing each subtree as soon as it has been populated,
+         * only the subtrees which are still being populated are held in memory, so the peak heap depends on the depth
+         * and fan-out of the model rather than on its total size. A completed instance only keeps what its parent
+         * needs to link to it, and no more children may be added to it. Shared children such as the jvms get written
+         * by the first parent to complete.
+         */
+        public void complete() throws IOException, URISyntaxException {
+            completeInternal(new JsonWriter());
+        }
+
+        private ResourceInstance completeInternal(JsonWriter json) throws IOException, URISyntaxException {
+            if (completed) {
+                return builtInstance;
+            }
+            validate();
+            //The parent instance does not exist yet, it gets linked to this one when it completes
+            final ResourceInstance instance = new ResourceInstance(urlUtil, path, template, null, name, attributes, statistics, rollUps, live);
+            for (Set<Builder> childBuilders : children.values()) {
+                for (Builder child : childBuilders) {
+                    instance.addChild(child.completeInternal(json));
+                }
+            }
+            instance.writeDocument(json);
+            if (!live) {
+                //Live documents get rendered again, so they need to keep their links
+                instance.children.clear();
+            }
+            children.clear();
+            completed = true;
+            builtInstance = instance;
+            return instance;
+        }
+
+        /**
+         * Writes just the statistics of this instance and the roll-ups of those of the instances under it, for when the
+         * document of the instance itself comes from elsewhere. The instance does not get completed, and values
+         * recorded under it get rolled up as usual.
+         */
+        public void completeStatistics() throws IOException, URISyntaxException {
+            new ResourceInstance(urlUtil, path, template, null, name, attributes, statistics, rollUps, live)
+                    .writeStatisticsDocument(new JsonWriter());
+        }
+
         private ResourceInstance buildInternal(ResourceInstance parent) throws IOException, URISyntaxException {
 
             if (builtInstance != null) {
                 parent.addChild(builtInstance);
                 return builtInstance;
             }
-            final Map<String, Attribute> attributeMap = template.getAttributeMap();
-            attributes.keySet().forEach(attr -> {
-                if (!attributeMap.containsKey(attr)) {
-                    throw new IllegalStateException("The instance tries to use an attribute '" + attr +
-                            "' which does not exist in the template for " + template.getResourceTypeName());
-                }
-            });
-            children.keySet().forEach(child -> {
-                if (!attributeMap.containsKey(child)) {
-                    throw new IllegalStateException("The instance tries to use an attribute '" + child +
-                            "' which does not exist in the template for " + template.getResourceTypeName());
-                }
-            });
-            attributeMap.forEach((key, definition) -> {
-                final ModelNode value = attributes.get(key);
-                if (value == null || !value.isDefined()) {
-                    if (!definition.isNillable() && !children.containsKey(key)) {
-                        throw new IllegalStateException("Attribute '" + key +
-                                "' is not nillable and has not been set as a child");
-                    }
-                } else {
-                    validateAttributeValue(definition, value);
-                }
-            });
-            final ResourceInstance instance = new ResourceInstance(urlUtil, url, template, parent, name, attributes);
+            validate();
+            final ResourceInstance instance = new ResourceInstance(urlUtil, path, template, parent, name, attributes, statistics, rollUps, live);
             if (parent != null) {
                 parent.addChild(instance);
             }
@@ -242,52 +559,24 @@ public class ResourceInstance {
             return instance;
         }
 
-        private void validateAttributeValue(Attribute definition, ModelNode value) {
-            if (definition.getType().isSimple()) {
-                validateSimpleValue(definition.getType(), definition.getName(), value);
-            } else if (definition.getType() == AttributeType.LIST){
-                if (value.getType() != ModelType.LIST) {
-                    throw new IllegalStateException("'" + definition.getName() + "' is not a list");
+        private void validate() {
+            final Map<String, Attribute> attributeMap = template.getAttributeMap();
+            children.keySet().forEach(child -> {
+                if (!attributeMap.containsKey(child)) {
+                    throw new IllegalStateException("The instance tries to use an attribute '" + child +
+                            "' which does not exist in the template for " + template.getResourceTypeName());
                 }
-                List<ModelNode> list = value.asList();
-                list.forEach(entry -> validateSimpleValue(definition.getValueType(), definition.getName(), entry));
-            } else if (definition.getType() == AttributeType.MAP) {
-                if (value.getType() != ModelType.OBJECT) {
-                    throw new IllegalStateException("'" + definition.getName() + "' is not a list");
+            });
+            //The values were validated when set
+            final AttributeLayout layout = template.getAttributeLayout();
+            for (int ordinal = 0; ordinal < layout.size(); ordinal++) {
+                final Attribute definition = layout.getAttribute(ordinal);
+                //The name of the instance is used if the name attribute is not set
+                if (!attributes.isDefined(ordinal) && !definition.isNillable() && !children.containsKey(definition.getName())
+                        && !definition.getName().equals(NAME)) {
+                    throw new IllegalStateException("Attribute '" + definition.getName() +
+                            "' is not nillable and has not been set as a child");
                 }
-                value.asPropertyList().forEach(prop -> validateSimpleValue(definition.getValueType(), definition.getName(), prop.getValue()));
-            } else {
-                throw new IllegalStateException("Unknown type " + definition.getType());
-            }
-        }
-
-        private void validateSimpleValue(AttributeType type, String attributeName, ModelNode value) {
-            switch (type) {
-                case BOOLEAN:
-                    value.asBoolean();
-                    break;
-                case DOUBLE:
-                case FLOAT:
-                    value.asDouble();
-                    break;
-                case INT:
-                    value.asInt();
-                    break;
-                case LONG:
-                    value.asLong();
-                    break;
-                case STRING:
-                    value.asString();
-                    break;
-                case URL:
-                    try {
-                        new URL(value.asString());
-                    } catch (MalformedURLException e) {
-                        throw new IllegalStateException("'" + attributeName + "' is not a valid URL");
-                    }
-                    break;
-                default:
-                    throw new IllegalStateException("Unknown type " + type);
             }
         }
 
@@ -295,8 +584,17 @@ public class ResourceInstance {
             return name;
         }
 
-        public URL getUrl() {
-            return url;
+        /**
+         * Gets the statistics of the instance. They are the ones the instance gets once built or completed.
+         *
+         * @return the statistics, or {@code null} if the instance is not a statistics provider
+         */
+        public Statistics getStatistics() {
+            return statistics;
+        }
+
+        public String getPath() {
+            return path;
         }
     }
 
@@ -25,15 +25,17 @@ package org.jboss.spec.jsr373.apiexample.resource;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jboss.dmr.ModelNode;
 import org.jboss.spec.jsr373.apiexample.UrlUtil;
@@ -48,17 +50,57 @@ public class ResourceTemplate {
     private final UrlUtil urlUtil;
     private final ManagedObjectType resourceType;
     private final Map<String, Attribute> attributeMap;
+    private final List<StatisticDefinition> statistics;
+    private final AttributeLayout attributeLayout;
+    //Shared by all the instances until they set values of their own
+    private final AttributeValues defaultAttributeValues;
     private final Map<String, Set<Class<? extends ManagedObjectType>>> children;
     private final Map<Class<? extends ManagedObjectType>, String> childrenByType = new HashMap<>();
-    private final URL url;
+    //The attributes resolved for the concrete child types, so that the class hierarchy only gets walked once per type
+    private final ConcurrentMap<Class<? extends ManagedObjectType>, String> childrenByConcreteType = new ConcurrentHashMap<>();
+    private final String path;
+    private final String href;
+    //Expanded on first use, since that needs the templates of all the parents to have been created
+    private volatile List<String> urlPatterns;
+    //Worked out on first use, since that needs the templates of all the children to have been created
+    private volatile List<ResourceTemplate> rolledUpTemplates;
+
+    //The POST operations are on <instance url>/operations/<name>
+    static final String OPERATIONS = "operations";
+    //The statistics of the instances of templates with statistics or roll-ups are on <instance url>/statistics
+    static final String STATISTICS = "statistics";
+    //The roll-ups of the statistics of an instance are on <instance url>/statistics/roll-ups/<type>, and the history
+    //of a statistic on <statistic url>/history
+    static final String ROLL_UPS = "roll-ups";
+    static final String HISTORY = "history";
+    private static final String HISTORY_PARAMETERS = ". The optional 'from' and 'to' query parameters give the period " +
+            "as RFC 3339 times or milliseconds since the epoch, and default to the last 5 minutes. The optional 'step' " +
+            "query parameter gives the seconds between the samples, and defaults to the resolution of the history for the " +
+            "period: one second for the last 5 minutes, one minute for the last hour and ten minutes for the last day.";
+    private static final String START = "start";
+    private static final String START_RECURSIVE = "start-recursive";
+    private static final String STOP = "stop";
 
     private static final List<ResourceTemplate> ALL_TEMPLATES = new ArrayList<>();
 
     private ResourceTemplate(UrlUtil urlUtil, ManagedObjectType resourceType, Map<String, Attribute> attributeMap,
-                             Map<String, Set<Class<? extends ManagedObjectType>>> children) throws IOException {
+                             Map<String, Set<Class<? extends ManagedObjectType>>> children,
+                             Map<String, ModelNode> defaultValues, List<StatisticDefinition> statistics) throws IOException {
         this.urlUtil = urlUtil;
         this.resourceType = resourceType;
         this.attributeMap = Collections.unmodifiableMap(attributeMap);
+        this.statistics = Collections.unmodifiableList(statistics);
+        this.attributeLayout = new AttributeLayout(attributeMap.values());
+        final AttributeValues defaultAttributeValues = new AttributeValues(attributeLayout);
+        for (Map.Entry<String, ModelNode> entry : defaultValues.entrySet()) {
+            final int ordinal = attributeLayout.getOrdinal(entry.getKey());
+            if (ordinal < 0) {
+                throw new IllegalStateException("There is a default value for an attribute '" + entry.getKey() +
+                        "' which does not exist in the template for " + resourceType.getName());
+            }
+            defaultAttributeValues.set(ordinal, entry.getValue());
+        }
+        this.defaultAttributeValues = defaultAttributeValues.freeze();
         this.children = Collections.unmodifiableMap(children);
         for (Map.Entry<String, Set<Class<? extends ManagedObjectType>>> entry : children.entrySet()) {
             for (Class<? extends ManagedObjectType> type : entry.getValue()) {
@@ -68,7 +110,8 @@ public class ResourceTemplate {
                 childrenByType.put(type, entry.getKey());
             }
         }
-        this.url = urlUtil.createTemplateUrl(resourceType);
+        this.path = urlUtil.createTemplatePath(resourceType);
+        this.href = urlUtil.toHref(path);
         resourceType.setTemplate(this);
 
     }
@@ -76,6 +119,8 @@ public class ResourceTemplate {
     public static ResourceTemplate createTemplate(UrlUtil urlUtil, ManagedObjectType resourceType) throws IOException {
         Builder builder =  new Builder(urlUtil, resourceType);
         resourceType.addAttributeDescriptions(builder);
+        resourceType.addStatisticDescriptions(builder);
+        resourceType.setDefaultAttributeValues(builder);
         ResourceTemplate template = builder.build();
         ALL_TEMPLATES.add(template);
         return template;
@@ -88,101 +133,226 @@ public class ResourceTemplate {
         }
     }
 
+    public static List<ResourceTemplate> getAllTemplates() {
+        return Collections.unmodifiableList(ALL_TEMPLATES);
+    }
+
     Map<String, Attribute> getAttributeMap() {
         return attributeMap;
     }
 
+    AttributeLayout getAttributeLayout() {
+        return attributeLayout;
+    }
+
+    AttributeValues getDefaultAttributeValues() {
+        return defaultAttributeValues;
+    }
+
     public ManagedObjectType getResourceType() {
         return resourceType;
     }
 
+    boolean hasStatistics() {
+        return !statistics.isEmpty();
+    }
+
+    /**
+     * Creates the statistics of an instance.
+     *
+     * @param parentRollUps the roll-ups of the parent of the instance, or {@code null} if it has none
+     * @return the statistics, or {@code null} if the template has none
+     */
+    Statistics createStatistics(RollUps parentRollUps) {
+        if (statistics.isEmpty()) {
+            return null;
+        }
+        return new Statistics(statistics, parentRollUps == null ? null : parentRollUps.getRollUp(this), false);
+    }
+
+    /**
+     * Creates the roll-up of the statistics of the instances of this template under another instance.
+     *
+     * @param parent the roll-up in the parent of that instance, or {@code null} if it has none
+     * @return the roll-up
+     */
+    Statistics createRollUp(Statistics parent) {
+        return new Statistics(statistics, parent, true);
+    }
+
+    /**
+     * Creates the roll-ups of the statistics of the instances under an instance.
+     *
+     * @param parentRollUps the roll-ups of the parent of the instance, or {@code null} if it has none
+     * @return the roll-ups, or {@code null} if the instances of the templates with statistics never go under the
+     * instances of this one
+     */
+    RollUps createRollUps(RollUps parentRollUps) {
+        final List<ResourceTemplate> templates = getRolledUpTemplates();
+        return templates.isEmpty() ? null : new RollUps(templates, parentRollUps);
+    }
+
+    boolean hasRollUps() {
+        return !getRolledUpTemplates().isEmpty();
+    }
+
+    /**
+     * Gets the templates with statistics whose instances go under the instances of this template in the urls.
+     *
+     * @return the templates
+     */
+    List<ResourceTemplate> getRolledUpTemplates() {
+        List<ResourceTemplate> templates = rolledUpTemplates;
+        if (templates == null) {
+            //Any threads racing to get here find the same templates
+            templates = new ArrayList<>();
+            for (ResourceTemplate template : ALL_TEMPLATES) {
+                if (template.hasStatistics() && template.isUnder(resourceType)) {
+                    templates.add(template);
+                }
+            }
+            templates = Collections.unmodifiableList(templates);
+            rolledUpTemplates = templates;
+        }
+        return templates;
+    }
+
+    private boolean isUnder(ManagedObjectType ancestor) {
+        for (ManagedObjectType parent : resourceType.getParentsForUriTemplate()) {
+            final ResourceTemplate parentTemplate = parent.getTemplate();
+            if (parent == ancestor || (parentTemplate != null && parentTemplate.isUnder(ancestor))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     String getResourceTypeName() {
         return resourceType.getName();
     }
 
     public void serialize() throws IOException, URISyntaxException {
-
-        ModelNode model = new ModelNode();
-        addLinks(model);
-        model.get("object-type").set(resourceType.getName());
-        model.get("description").set(resourceType.getDescription());
-        addParents(model);
-        addAttributes(model);
-        addHttpMethods(model);
-
-        try (final PrintWriter exampleWriter = urlUtil.getWriter(url)) {
-            model.writeJSONString(exampleWriter, false);
+        try (final PrintWriter exampleWriter = urlUtil.getWriter(path)) {
+            final JsonWriter json = new JsonWriter(exampleWriter);
+            json.beginObject(hasStatistics() ? 8 : 7);
+            writeLinks(json);
+            json.name("object-type").value(resourceType.getName());
+            json.name("description").value(resourceType.getDescription());
+            writeParents(json);
+            writeAttributes(json);
+            if (hasStatistics()) {
+                writeStatistics(json);
+            }
+            writeHttpMethods(json);
+            json.endObject();
+            json.flush();
         }
     }
 
-    private void addLinks(ModelNode model) {
-        ModelNode links = model.get("links");
-        ModelNode self = new ModelNode();
-        self.get("rel").set("self");
-        self.get("href").set(url.toExternalForm());
-        links.add(self);
+    private void writeLinks(JsonWriter json) throws IOException {
+        json.name("links").beginList(1);
+        json.beginObject(2);
+        json.name("rel").value("self");
+        json.name("href").value(href);
+        json.endObject();
+        json.endList();
     }
 
-    private void addParents(ModelNode model) throws IOException {
-        model.get("allow-null-parent").set(resourceType.getParents().contains(NullType.INSTANCE));
-        ModelNode parents = model.get("parents").setEmptyObject();
-        for (ManagedObjectType type : resourceType.getParents()) {
-            if (type == NullType.INSTANCE) {
-                //We use allow-null-parent for this
-                continue;
-            } else {
-                Util.addTypeLinkToMap(parents, type);
+    private void writeParents(JsonWriter json) throws IOException {
+        final Set<ManagedObjectType> parentTypes = resourceType.getParents();
+        json.name("allow-null-parent").value(parentTypes.contains(NullType.INSTANCE));
+        //We use allow-null-parent for the null type
+        json.name("parents").beginObject(parentTypes.contains(NullType.INSTANCE) ? parentTypes.size() - 1 : parentTypes.size());
+        for (ManagedObjectType type : parentTypes) {
+            if (type != NullType.INSTANCE) {
+                Util.writeTypeLink(json, type);
             }
         }
+        json.endObject();
     }
 
-    private void addAttributes(ModelNode model) {
-        ModelNode attributes = model.get("attributes");
-        attributeMap.forEach((key, value) -> attributes.get(key).set(value.toModelNode()));
+    private void writeAttributes(JsonWriter json) throws IOException {
+        json.name("attributes").beginObject(attributeMap.size());
+        for (Attribute attribute : attributeMap.values()) {
+            json.name(attribute.getName());
+            attribute.writeJson(json);
+        }
+        json.endObject();
     }
 
-    private void addHttpMethods(ModelNode modelNode) {
-        final List<String> urlPatterns = getAllUrlPatterns();
+    private void writeStatistics(JsonWriter json) throws IOException {
+        json.name("statistics").beginObject(statistics.size());
+        for (StatisticDefinition statistic : statistics) {
+            json.name(statistic.getName());
+            statistic.writeJson(json);
+        }
+        json.endObject();
+    }
 
-        ModelNode httpMethods = modelNode.get("http-methods");
-        ModelNode get = httpMethods.get("GET");
+    private void writeHttpMethods(JsonWriter json) throws IOException {
+        final List<String> urlPatterns = getAllUrlPatterns();
 
-        get.add(createOperation(urlPatterns, "Returns a named " + resourceType.getName() + " instance", url,
-                null));
-        get.add(createOperation(urlPatterns, "Returns a list of the " + resourceType.getName() + "s under the parent", url,
-                pattern -> pattern.substring(0, pattern.lastIndexOf("/"))));
+        json.name("http-methods").beginObject(2);
+        json.name("GET").beginList(2 + (hasStatistics() || hasRollUps() ? 1 : 0) + (hasStatistics() ? 1 : 0) +
+                (hasRollUps() ? 1 : 0));
+        writeOperation(json, urlPatterns, "Returns a named " + resourceType.getName() + " instance", path,
+                null);
+        writeOperation(json, urlPatterns, "Returns a list of the " + resourceType.getName() + "s under the parent", path,
+                pattern -> pattern.substring(0, pattern.lastIndexOf("/")));
+        if (hasStatistics() || hasRollUps()) {
+            writeOperation(json, urlPatterns, "Returns the statistics of a named " + resourceType.getName() + " instance" +
+                            (hasRollUps() ? ", along with the roll-ups of the statistics of the instances under it" : ""),
+                    null, pattern -> pattern + "/" + STATISTICS);
+        }
+        if (hasStatistics()) {
+            writeOperation(json, urlPatterns, "Returns the history of a statistic of a named " + resourceType.getName() +
+                            " instance" + HISTORY_PARAMETERS,
+                    null, pattern -> pattern + "/" + STATISTICS + "/{statistic-name}/" + HISTORY);
+        }
+        if (hasRollUps()) {
+            writeOperation(json, urlPatterns, "Returns the history of a statistic of the roll-ups of a named " +
+                            resourceType.getName() + " instance" + HISTORY_PARAMETERS,
+                    null, pattern -> pattern + "/" + STATISTICS + "/" + ROLL_UPS + "/{rolled-up-type}/{statistic-name}/" + HISTORY);
+        }
+        json.endList();
 
-        addPostOperations(httpMethods, urlPatterns);
+        writePostOperations(json, urlPatterns);
+        json.endObject();
     }
 
-    private void addPostOperations(ModelNode httpMethods, List<String> urlPatterns) {
-        ModelNode post = httpMethods.get("POST");
-        getStateManageableOperations(urlPatterns).forEach(op -> post.add(op));
+    private void writePostOperations(JsonWriter json, List<String> urlPatterns) throws IOException {
+        json.name("POST").beginList(3);
+        writeStateManageableOperations(json, urlPatterns);
         //TODO Event Provider
-        //TODO Performance Monitor
-        return;
-    }
-    private List<ModelNode> getStateManageableOperations(List<String> urlPatterns) {
-        List<ModelNode> ops = new ArrayList<>();
-        ops.add(createOperation(urlPatterns, "Starts this " + resourceType.getName() + ".", null,
-                pattern -> pattern + "/operations/start"));
-        ops.add(createOperation(urlPatterns, "Starts this " + resourceType.getName() + " and all its children.", null,
-                pattern -> pattern + "/operations/start-recursive"));
-        ops.add(createOperation(urlPatterns, "Stops this " + resourceType.getName() + " and all its children.", null,
-                pattern -> pattern + "/operations/stop"));
-        return ops;
-    }
-
-    private ModelNode createOperation(List<String> urlPatterns, String description, URL help, URLPatternDecorator patternDecorator) {
-        ModelNode op = new ModelNode();
-        ModelNode patterns = op.get("url-patterns");
-        urlPatterns.forEach(s -> patterns.add(patternDecorator == null ? s : patternDecorator.decorate(s)));
-        op.get("description").set(description);
+        //The statistics are read with GET, and JSR 77 has no operations for them
+        json.endList();
+    }
+
+    private void writeStateManageableOperations(JsonWriter json, List<String> urlPatterns) throws IOException {
+        writeOperation(json, urlPatterns, "Starts this " + resourceType.getName() + ".", null,
+                pattern -> pattern + "/" + OPERATIONS + "/" + START);
+        writeOperation(json, urlPatterns, "Starts this " + resourceType.getName() + " and all its children.", null,
+                pattern -> pattern + "/" + OPERATIONS + "/" + START_RECURSIVE);
+        writeOperation(json, urlPatterns, "Stops this " + resourceType.getName() + " and all its children.", null,
+                pattern -> pattern + "/" + OPERATIONS + "/" + STOP);
+    }
+
+    private void writeOperation(JsonWriter json, List<String> urlPatterns, String description, String help,
+                                URLPatternDecorator patternDecorator) throws IOException {
+        json.beginObject(help == null ? 2 : 3);
+        json.name("url-patterns").beginList(urlPatterns.size());
+        for (String pattern : urlPatterns) {
+            json.value(patternDecorator == null ? pattern : patternDecorator.decorate(pattern));
+        }
+        json.endList();
+        json.name("description").value(description);
         if (help != null) {
-            op.get("link", "rel").set("help");
-            op.get("link", "href").set(url.toExternalForm());
+            json.name("link").beginObject(2);
+            json.name("rel").value("help");
+            json.name("href").value(href);
+            json.endObject();
         }
-        return op;
+        json.endObject();
     }
 
     public ResourceInstance.Builder createRootInstanceBuilder(String name) throws IOException, URISyntaxException {
@@ -190,8 +360,17 @@ public class ResourceTemplate {
         return builder;
     }
 
-    URL getUrl() {
-        return url;
+    String getPath() {
+        return path;
+    }
+
+    String getHref() {
+        return href;
+    }
+
+    List<String> getOperationNames() {
+        //These are the ones written by writeStateManageableOperations()
+        return Arrays.asList(START, START_RECURSIVE, STOP);
     }
 
     @Override
@@ -209,6 +388,14 @@ public class ResourceTemplate {
     }
 
     String getAttributeForChildType(Class<? extends ManagedObjectType> type) {
+        final String attribute = childrenByConcreteType.get(type);
+        if (attribute != null) {
+            return attribute;
+        }
+        return childrenByConcreteType.computeIfAbsent(type, this::findAttributeForChildType);
+    }
+
+    private String findAttributeForChildType(Class<? extends ManagedObjectType> type) {
         Class<?> current = type;
         String attribute = null;
         while (true) {
@@ -223,7 +410,17 @@ public class ResourceTemplate {
         }
     }
 
-    private List<String> getAllUrlPatterns() {
+    List<String> getAllUrlPatterns() {
+        List<String> patterns = urlPatterns;
+        if (patterns == null) {
+            //Any threads racing to get here expand the same patterns
+            patterns = Collections.unmodifiableList(expandUrlPatterns());
+            urlPatterns = patterns;
+        }
+        return patterns;
+    }
+
+    private List<String> expandUrlPatterns() {
         List<List<ResourceTemplate>> parents = new ArrayList<>();
         parents.add(new ArrayList<>());
         getAllParentTypesForUrlPattern(parents);
@@ -309,6 +506,8 @@ public class ResourceTemplate {
         private final ManagedObjectType resourceType;
         private final Map<String, Attribute> attributes = new LinkedHashMap<>();
         private final Map<String, Set<Class<? extends ManagedObjectType>>> children = new HashMap<>();
+        private final Map<String, ModelNode> defaultValues = new LinkedHashMap<>();
+        private final Map<String, StatisticDefinition> statistics = new LinkedHashMap<>();
 
         private Builder(UrlUtil urlUtil, ManagedObjectType resourceType) {
             this.urlUtil = urlUtil;
@@ -323,8 +522,35 @@ public class ResourceTemplate {
             return this;
         }
 
+        /**
+         * Sets the value every instance of the template starts off with. The values are shared by the instances, so
+         * only use this for values which are the same for all of them.
+         *
+         * @param name the name of the attribute
+         * @param value the value
+         * @return this builder
+         */
+        public Builder setDefaultAttributeValue(String name, ModelNode value) {
+            defaultValues.put(name, value);
+            return this;
+        }
+
+        public Builder addStatistic(StatisticDefinition statistic) {
+            if (statistics.putIfAbsent(statistic.getName(), statistic) != null) {
+                throw new IllegalStateException("Duplicate statistic '" + statistic.getName() + "' for " + resourceType.getName());
+            }
+            return this;
+        }
+
+        /**
+         * @return whether any statistics have been added, i.e. whether the instances are statistics providers
+         */
+        public boolean hasStatistics() {
+            return !statistics.isEmpty();
+        }
+
         private Builder createChildType(String name, Set<Class<? extends ManagedObjectType>> childTypes) {
-            Set<Class<? extends ManagedObjectType>> set = new HashSet<>();
+            Set<Class<? extends ManagedObjectType>> set = new LinkedHashSet<>();
             for (Class<? extends ManagedObjectType> type : childTypes) {
                 set.add(type);
             }
@@ -333,7 +559,8 @@ public class ResourceTemplate {
         }
 
         public ResourceTemplate build() throws IOException {
-            return new ResourceTemplate(urlUtil, resourceType, attributes, children);
+            return new ResourceTemplate(urlUtil, resourceType, attributes, children, defaultValues,
+                    new ArrayList<>(statistics.values()));
 
         }
 
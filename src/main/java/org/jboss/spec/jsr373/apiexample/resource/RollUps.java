@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The roll-ups of the statistics of the instances under an instance, e.g. the total service time of all the servlets
+ * of a server. There is one {@link Statistics} for each of the templates with statistics which may have instances
+ * under the template of the instance, holding the totals of all the instances of that template under it.
+ * <p/>
+ * The roll-ups are kept up to date as the values get recorded rather than worked out when read: each value
+ * recorded in a statistic is also recorded in the matching statistic of the roll-ups of the parent, which records
+ * it in those of its parent and so on up to the domain. Recording a value costs one update per level, and reading
+ * a roll-up at any level costs the same as reading the statistics of a single instance. Counts and times are summed
+ * up, so the percentiles of a time are those of all the times recorded under the instance. The current values of
+ * the ranges are summed up, and their water marks are those of the sum rather than the sum of the water marks.
+ * <p/>
+ * The values only get rolled up along the urls, so an instance is only counted under the parent it was created
+ * under and that one's parents. An instance which is linked to from several parents, like the jvms which the
+ * modules run in, does not get counted once for each of them.
+ */
+class RollUps {
+    private final List<ResourceTemplate> templates;
+    private final Statistics[] statistics;
+
+    /**
+     * Creates the roll-ups for an instance.
+     *
+     * @param templates the templates to roll up the statistics of, as returned by {@link ResourceTemplate#getRolledUpTemplates()}
+     * @param parent the roll-ups of the parent of the instance, or {@code null} for a root instance
+     */
+    RollUps(List<ResourceTemplate> templates, RollUps parent) {
+        this.templates = templates;
+        this.statistics = new Statistics[templates.size()];
+        for (int i = 0; i < statistics.length; i++) {
+            final ResourceTemplate template = templates.get(i);
+            statistics[i] = template.createRollUp(parent == null ? null : parent.getRollUp(template));
+        }
+    }
+
+    /**
+     * Gets the roll-up of the statistics of the instances of a template.
+     *
+     * @param template the template
+     * @return the roll-up, or {@code null} if the instances of the template do not go under this instance
+     */
+    Statistics getRollUp(ResourceTemplate template) {
+        //There are only a handful of templates with statistics
+        for (int i = 0; i < statistics.length; i++) {
+            if (templates.get(i) == template) {
+                return statistics[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the roll-up of the statistics of the instances of a type.
+     *
+     * @param typeName the name of the type, e.g. {@code Servlet}
+     * @return the roll-up, or {@code null} if the instances of the type do not go under this instance
+     */
+    Statistics getRollUp(String typeName) {
+        for (int i = 0; i < statistics.length; i++) {
+            if (templates.get(i).getResourceTypeName().equals(typeName)) {
+                return statistics[i];
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return statistics.length;
+    }
+
+    Statistics getRollUp(int index) {
+        return statistics[index];
+    }
+
+    /**
+     * Gets a number which changes whenever a value gets recorded under the instance.
+     *
+     * @return the version
+     */
+    long getVersion() {
+        long version = 0;
+        for (Statistics rollUp : statistics) {
+            version += rollUp.getVersion();
+        }
+        return version;
+    }
+
+    void writeJson(JsonWriter json) throws IOException {
+        json.beginObject(statistics.length);
+        for (int i = 0; i < statistics.length; i++) {
+            json.name(templates.get(i).getResourceTypeName());
+            statistics[i].writeJson(json);
+        }
+        json.endObject();
+    }
+}
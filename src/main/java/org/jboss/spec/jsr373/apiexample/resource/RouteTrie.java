@@ -0,0 +1,382 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dispatches normalised request paths to the templates they belong to. The trie is compiled from the url patterns
+ * of the templates (e.g. {@code /domains/{domain-id}/servers/{server-id}}), with one node per path element, so
+ * matching a path costs one step per element no matter how many templates and instances there are. The ids are
+ * recorded as offsets into the path while matching, and only turned into strings when asked for.
+ * <p/>
+ * Since a collection may hold instances of several types (e.g. the deployed objects), a path only identifies the
+ * candidate templates. Which one the instance really belongs to is down to the instance.
+ */
+public class RouteTrie {
+
+    public enum Kind {
+        /** The list of all the templates */
+        TEMPLATE_COLLECTION,
+        /** A template */
+        TEMPLATE,
+        /** The list of the instances of the templates under a parent */
+        COLLECTION,
+        /** An instance */
+        INSTANCE,
+        /** A POST operation on an instance */
+        OPERATION,
+        /** The statistics of an instance */
+        STATISTICS,
+        /** The history of one of the statistics of an instance, or of its roll-ups */
+        HISTORY
+    }
+
+    //The ids in the paths of the histories
+    private static final String STATISTIC_NAME = "statistic-name";
+    private static final String ROLLED_UP_TYPE = "rolled-up-type";
+
+    private final Node root;
+    private final int maxIds;
+
+    private RouteTrie(Node root, int maxIds) {
+        this.root = root;
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * Compiles the routes for the templates. The templates must have been created with the servlet
+     * {@code UrlUtil}, since their own paths are routed as they are.
+     *
+     * @param templates the templates
+     * @return the compiled routes
+     */
+    public static RouteTrie compile(Collection<ResourceTemplate> templates) {
+        final Node root = new Node(new String[0]);
+        for (ResourceTemplate template : templates) {
+            final Node node = root.add(template.getPath());
+            node.setKind(Kind.TEMPLATE, template);
+            node.parent.setKind(Kind.TEMPLATE_COLLECTION, template);
+
+            for (String pattern : template.getAllUrlPatterns()) {
+                final Node instance = root.add(pattern);
+                if (instance.parent.wildcard != instance) {
+                    throw new IllegalStateException("Url pattern " + pattern + " does not end with an id");
+                }
+                instance.setKind(Kind.INSTANCE, template);
+                instance.parent.setKind(Kind.COLLECTION, template);
+                final Node operations = instance.addLiteral(ResourceTemplate.OPERATIONS);
+                for (String operation : template.getOperationNames()) {
+                    operations.addLiteral(operation).setKind(Kind.OPERATION, template);
+                }
+                if (template.hasStatistics() || template.hasRollUps()) {
+                    final Node statistics = instance.addLiteral(ResourceTemplate.STATISTICS);
+                    statistics.setKind(Kind.STATISTICS, template);
+                    if (template.hasStatistics()) {
+                        statistics.addWildcard(STATISTIC_NAME).addLiteral(ResourceTemplate.HISTORY)
+                                .setKind(Kind.HISTORY, template);
+                    }
+                    if (template.hasRollUps()) {
+                        statistics.addLiteral(ResourceTemplate.ROLL_UPS).addWildcard(ROLLED_UP_TYPE)
+                                .addWildcard(STATISTIC_NAME).addLiteral(ResourceTemplate.HISTORY)
+                                .setKind(Kind.HISTORY, template);
+                    }
+                }
+            }
+        }
+        return new RouteTrie(root, root.getMaxIds());
+    }
+
+    /**
+     * Matches a path.
+     *
+     * @param path the path as returned by {@code UrlUtil.Factory.normalisePath()}
+     * @return the match, or {@code null} if the path does not match any route
+     */
+    public Match match(String path) {
+        final int length = path.length();
+        final int[] bounds = new int[maxIds * 2];
+        int ids = 0;
+        Node node = root;
+        int start = 1;
+        while (start <= length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            final Node literal = node.findLiteral(path, start, end - start);
+            if (literal != null) {
+                node = literal;
+            } else if (node.wildcard != null) {
+                node = node.wildcard;
+                bounds[ids * 2] = start;
+                bounds[ids * 2 + 1] = end;
+                ids++;
+            } else {
+                return null;
+            }
+            start = end + 1;
+        }
+        if (node.kind == null) {
+            return null;
+        }
+        return new Match(path, node, bounds);
+    }
+
+    /**
+     * The result of matching a path.
+     */
+    public static class Match {
+        private final String path;
+        private final Node node;
+        private final int[] bounds;
+
+        private Match(String path, Node node, int[] bounds) {
+            this.path = path;
+            this.node = node;
+            this.bounds = bounds;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Kind getKind() {
+            return node.kind;
+        }
+
+        /**
+         * Gets the templates the path may belong to. For a {@link Kind#TEMPLATE} this is the template itself.
+         *
+         * @return the templates
+         */
+        public List<ResourceTemplate> getTemplates() {
+            return node.templates;
+        }
+
+        /**
+         * Gets the name of the operation for a {@link Kind#OPERATION}.
+         *
+         * @return the name of the operation, or {@code null} if this is not an operation
+         */
+        public String getOperation() {
+            return node.kind == Kind.OPERATION ? node.segment : null;
+        }
+
+        /**
+         * Gets the path of the instance for an {@link Kind#INSTANCE}, {@link Kind#OPERATION}, {@link Kind#STATISTICS}
+         * or {@link Kind#HISTORY}.
+         *
+         * @return the path of the instance, or {@code null} if this is none of those
+         */
+        public String getInstancePath() {
+            if (node.kind == Kind.INSTANCE) {
+                return path;
+            }
+            if (node.kind == Kind.OPERATION || node.kind == Kind.STATISTICS) {
+                //The instance id is the last one
+                return path.substring(0, bounds[node.idNames.length * 2 - 1]);
+            }
+            if (node.kind == Kind.HISTORY) {
+                return path.substring(0, bounds[getStatisticsNode().idNames.length * 2 - 1]);
+            }
+            return null;
+        }
+
+        /**
+         * Gets the path of the statistics for a {@link Kind#STATISTICS} or {@link Kind#HISTORY}.
+         *
+         * @return the path of the statistics, or {@code null} if this is neither of those
+         */
+        public String getStatisticsPath() {
+            if (node.kind == Kind.STATISTICS) {
+                return path;
+            }
+            if (node.kind == Kind.HISTORY) {
+                final int instanceEnd = bounds[getStatisticsNode().idNames.length * 2 - 1];
+                return path.substring(0, instanceEnd + 1 + ResourceTemplate.STATISTICS.length());
+            }
+            return null;
+        }
+
+        /**
+         * Gets the name of the statistic for a {@link Kind#HISTORY}.
+         *
+         * @return the name, or {@code null} if this is not a history
+         */
+        public String getStatisticName() {
+            return node.kind == Kind.HISTORY ? getId(STATISTIC_NAME) : null;
+        }
+
+        /**
+         * Gets the name of the type of the instances for the {@link Kind#HISTORY} of a statistic of the roll-ups.
+         *
+         * @return the name of the type, or {@code null} if this is not the history of a statistic of the roll-ups
+         */
+        public String getRolledUpType() {
+            return node.kind == Kind.HISTORY ? getId(ROLLED_UP_TYPE) : null;
+        }
+
+        private Node getStatisticsNode() {
+            //The ids of the statistic come after the id of the instance
+            Node statistics = node;
+            while (statistics.kind != Kind.STATISTICS) {
+                statistics = statistics.parent;
+            }
+            return statistics;
+        }
+
+        /**
+         * Gets the names of the ids in the path, e.g. {@code domain-id}, in the order they appear in.
+         *
+         * @return the names of the ids
+         */
+        public List<String> getIdNames() {
+            return Collections.unmodifiableList(Arrays.asList(node.idNames));
+        }
+
+        /**
+         * Gets the value of an id in the path.
+         *
+         * @param name the name of the id, e.g. {@code domain-id}
+         * @return the value of the id, or {@code null} if the path has no such id
+         */
+        public String getId(String name) {
+            final String[] names = node.idNames;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return path.substring(bounds[i * 2], bounds[i * 2 + 1]);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Node {
+        private final Node parent;
+        private final String segment;
+        //The names of the ids on the way to this node
+        private final String[] idNames;
+        //There are only a handful of literals per node, so a linear search over them is cheaper than hashing
+        private String[] literals = new String[0];
+        private Node[] literalNodes = new Node[0];
+        private Node wildcard;
+        private Kind kind;
+        private List<ResourceTemplate> templates = Collections.emptyList();
+
+        Node(String[] idNames) {
+            this(null, null, idNames);
+        }
+
+        private Node(Node parent, String segment, String[] idNames) {
+            this.parent = parent;
+            this.segment = segment;
+            this.idNames = idNames;
+        }
+
+        Node add(String pattern) {
+            Node node = this;
+            for (String segment : pattern.split("/")) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    node = node.addWildcard(segment.substring(1, segment.length() - 1));
+                } else {
+                    node = node.addLiteral(segment);
+                }
+            }
+            return node;
+        }
+
+        Node addLiteral(String segment) {
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equals(segment)) {
+                    return literalNodes[i];
+                }
+            }
+            final Node node = new Node(this, segment, idNames);
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literalNodes = Arrays.copyOf(literalNodes, literalNodes.length + 1);
+            literals[literals.length - 1] = segment;
+            literalNodes[literalNodes.length - 1] = node;
+            return node;
+        }
+
+        Node addWildcard(String name) {
+            if (wildcard == null) {
+                final String[] names = Arrays.copyOf(idNames, idNames.length + 1);
+                names[idNames.length] = name;
+                wildcard = new Node(this, name, names);
+            } else if (!wildcard.segment.equals(name)) {
+                throw new IllegalStateException("Conflicting ids {" + wildcard.segment + "} and {" + name + "} under " + this);
+            }
+            return wildcard;
+        }
+
+        void setKind(Kind kind, ResourceTemplate template) {
+            if (this.kind != null && this.kind != kind) {
+                throw new IllegalStateException(this + " is both a " + this.kind + " and a " + kind);
+            }
+            this.kind = kind;
+            if (!templates.contains(template)) {
+                final List<ResourceTemplate> list = new ArrayList<>(templates);
+                list.add(template);
+                templates = Collections.unmodifiableList(list);
+            }
+        }
+
+        Node findLiteral(String path, int start, int length) {
+            for (int i = 0; i < literals.length; i++) {
+                final String literal = literals[i];
+                if (literal.length() == length && path.regionMatches(start, literal, 0, length)) {
+                    return literalNodes[i];
+                }
+            }
+            return null;
+        }
+
+        int getMaxIds() {
+            int max = idNames.length;
+            for (Node node : literalNodes) {
+                max = Math.max(max, node.getMaxIds());
+            }
+            if (wildcard != null) {
+                max = Math.max(max, wildcard.getMaxIds());
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            if (parent == null) {
+                return "";
+            }
+            return parent + "/" + (parent.wildcard == this ? "{" + segment + "}" : segment);
+        }
+    }
+}
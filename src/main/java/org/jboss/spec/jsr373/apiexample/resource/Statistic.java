@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * The values of a statistic of an instance, following the Statistic interface of JSR 77. Values get recorded
+ * without locking, and reading them never holds up the threads recording them. The values of a statistic are read
+ * one at a time, so a reader racing with the recording may see some of them before and some after a recorded value.
+ * <p/>
+ * If the instance is under instances with {@link RollUps}, each recorded value is recorded in the matching
+ * statistic of the parent's roll-ups as well, and from there on up.
+ */
+public abstract class Statistic {
+    private final StatisticDefinition definition;
+    private final Statistics owner;
+    private final long startTime;
+    private final LongAccumulator lastSampleTime;
+    //Only created by the HistorySampler, once something has been recorded
+    private volatile History history;
+
+    Statistic(StatisticDefinition definition, Statistics owner, long startTime) {
+        this.definition = definition;
+        this.owner = owner;
+        this.startTime = startTime;
+        this.lastSampleTime = new LongAccumulator(Math::max, startTime);
+    }
+
+    public String getName() {
+        return definition.getName();
+    }
+
+    public String getUnit() {
+        return definition.getUnit();
+    }
+
+    public String getDescription() {
+        return definition.getDescription();
+    }
+
+    /**
+     * @return the time of the first measurement, in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the time of the last measurement, in milliseconds since the epoch
+     */
+    public long getLastSampleTime() {
+        return lastSampleTime.get();
+    }
+
+    StatisticDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * @return the kind of the statistic, which for a roll-up may differ from that of the definition
+     */
+    StatisticDefinition.Kind getKind() {
+        return definition.getKind();
+    }
+
+    /**
+     * Called by the subclasses once they have recorded a value.
+     */
+    final void recorded() {
+        lastSampleTime.accumulate(System.currentTimeMillis());
+        owner.changed();
+    }
+
+    void writeJson(JsonWriter json) throws IOException {
+        json.beginObject(5 + getValueCount());
+        json.name("type").value(getKind().getTypeName());
+        json.name("unit").value(definition.getUnit());
+        json.name("description").value(definition.getDescription());
+        json.name("start-time").value(formatTime(startTime));
+        json.name("last-sample-time").value(formatTime(getLastSampleTime()));
+        writeValues(json);
+        json.endObject();
+    }
+
+    /**
+     * Samples the values into the history, creating that if they have moved away from their starting values. Only
+     * called by the {@link HistorySampler}, so the statistics which are never used never get a history.
+     *
+     * @param second the time of the sample, in seconds since the epoch
+     * @param values a buffer to read the values into, with room for at least {@link History#MAX_VALUES} of them
+     */
+    final void sampleHistory(long second, long[] values) {
+        readHistoryValues(values);
+        History history = this.history;
+        if (history == null) {
+            final int count = getHistoryValueNames().length;
+            for (int i = 0; i < count; i++) {
+                if (values[i] != 0) {
+                    history = new History(count);
+                    break;
+                }
+            }
+            if (history == null) {
+                //Every value sampled so far has been 0, which is what the history reports for before it was created
+                return;
+            }
+            this.history = history;
+        }
+        history.record(second, values);
+    }
+
+    /**
+     * @return the history, or {@code null} if nothing has been sampled into it yet
+     */
+    History getHistory() {
+        return history;
+    }
+
+    /**
+     * @return the names of the values which get sampled into the history
+     */
+    abstract String[] getHistoryValueNames();
+
+    /**
+     * Reads the values which get sampled into the history, in the order of {@link #getHistoryValueNames()}.
+     *
+     * @param values the array to read them into
+     */
+    abstract void readHistoryValues(long[] values);
+
+    /**
+     * @return the number of entries written by {@link #writeValues(JsonWriter)}
+     */
+    abstract int getValueCount();
+
+    abstract void writeValues(JsonWriter json) throws IOException;
+
+    static String formatTime(long time) {
+        //The same RFC 3339 format as the dates in the attributes
+        return DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(time));
+    }
+}
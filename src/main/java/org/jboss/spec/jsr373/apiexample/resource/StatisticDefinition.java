@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+
+/**
+ * Describes one of the statistics in the stats of a {@link ResourceTemplate}, which every instance of the template
+ * gets its own {@link Statistic} for. The kinds are those of JSR 77.
+ */
+public class StatisticDefinition {
+    /** The unit of statistics which count things */
+    public static final String COUNT = "COUNT";
+    public static final String MILLISECOND = "MILLISECOND";
+    public static final String MICROSECOND = "MICROSECOND";
+    public static final String BYTE = "BYTE";
+
+    public enum Kind {
+        COUNT("CountStatistic"),
+        TIME("TimeStatistic"),
+        RANGE("RangeStatistic"),
+        BOUNDED_RANGE("BoundedRangeStatistic");
+
+        private final String typeName;
+
+        Kind(String typeName) {
+            this.typeName = typeName;
+        }
+
+        /**
+         * @return the name of the JSR 77 interface for the kind, e.g. {@code CountStatistic}
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final String unit;
+    private final String description;
+    private final long lowerBound;
+    private final long upperBound;
+    private final boolean histogram;
+
+    private StatisticDefinition(String name, Kind kind, String unit, String description, long lowerBound, long upperBound,
+                                boolean histogram) {
+        this.name = name;
+        this.kind = kind;
+        this.unit = unit;
+        this.description = description;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.histogram = histogram;
+    }
+
+    public static Builder createBuilder(String name, Kind kind, String unit, String description) {
+        return new Builder(name, kind, unit, description);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    long getLowerBound() {
+        return lowerBound;
+    }
+
+    long getUpperBound() {
+        return upperBound;
+    }
+
+    boolean hasHistogram() {
+        return histogram;
+    }
+
+    Statistic createStatistic(Statistics owner, long startTime, Statistic parent, boolean rollUp) {
+        switch (kind) {
+            case COUNT:
+                return new CountStatistic(this, owner, startTime, (CountStatistic) parent);
+            case TIME:
+                return new TimeStatistic(this, owner, startTime, (TimeStatistic) parent);
+            case RANGE:
+                return new RangeStatistic(this, owner, startTime, (RangeStatistic) parent);
+            case BOUNDED_RANGE:
+                //The sum of the values of several instances is not held to the bounds of each of them
+                return rollUp ? new RangeStatistic(this, owner, startTime, (RangeStatistic) parent) :
+                        new BoundedRangeStatistic(this, owner, startTime, (RangeStatistic) parent);
+            default:
+                throw new IllegalStateException("Unknown kind " + kind);
+        }
+    }
+
+    void writeJson(JsonWriter json) throws IOException {
+        final boolean bounded = kind == Kind.BOUNDED_RANGE;
+        json.beginObject(3 + (bounded ? 2 : 0) + (histogram ? 1 : 0));
+        json.name("description").value(description);
+        json.name("type").value(kind.getTypeName());
+        json.name("unit").value(unit);
+        if (bounded) {
+            json.name("lower-bound").value(lowerBound);
+            json.name("upper-bound").value(upperBound);
+        }
+        if (histogram) {
+            TimeStatistic.writePercentileNames(json);
+        }
+        json.endObject();
+    }
+
+    public static class Builder {
+        final String name;
+        final Kind kind;
+        final String unit;
+        final String description;
+        long lowerBound;
+        long upperBound;
+        boolean bounds;
+        boolean histogram;
+
+        private Builder(String name, Kind kind, String unit, String description) {
+            this.name = name;
+            this.kind = kind;
+            this.unit = unit;
+            this.description = description;
+        }
+
+        public Builder setBounds(long lowerBound, long upperBound) {
+            if (kind != Kind.BOUNDED_RANGE) {
+                throw new IllegalStateException("Only a " + Kind.BOUNDED_RANGE + " has bounds");
+            }
+            if (lowerBound > upperBound) {
+                throw new IllegalArgumentException("The lower bound " + lowerBound + " is above the upper bound " + upperBound);
+            }
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            bounds = true;
+            return this;
+        }
+
+        /**
+         * Makes the statistic keep a histogram of the recorded times, so that it can report their percentiles. The
+         * histogram is only allocated once a time gets recorded, or {@link Statistics#createHistograms()} is called.
+         *
+         * @return this builder
+         */
+        public Builder setHistogram() {
+            if (kind != Kind.TIME) {
+                throw new IllegalStateException("Only a " + Kind.TIME + " can have a histogram");
+            }
+            histogram = true;
+            return this;
+        }
+
+        public StatisticDefinition build() {
+            if (kind == Kind.BOUNDED_RANGE && !bounds) {
+                throw new IllegalStateException("No bounds set for " + name);
+            }
+            return new StatisticDefinition(name, kind, unit, description, lowerBound, upperBound, histogram);
+        }
+    }
+}
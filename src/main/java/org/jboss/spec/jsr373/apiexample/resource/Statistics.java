@@ -0,0 +1,139 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of an instance, following the Stats interface of JSR 77. There is one {@link Statistic} for each
+ * of the {@link StatisticDefinition}s of the template.
+ */
+public class Statistics {
+    private final List<Statistic> statistics;
+    //Bumped after every recorded value, so that readers can tell whether anything has changed
+    private final LongAdder updates = new LongAdder();
+    //Whether these have been handed to the HistorySampler, which only samples the statistics recorded in
+    private volatile boolean sampled;
+
+    /**
+     * Creates the statistics.
+     *
+     * @param definitions the definitions of the statistics
+     * @param parent the roll-up in the parent to record the values in as well, or {@code null} if there is none. It
+     *               must have been created from the same definitions.
+     * @param rollUp whether these are the roll-up of the statistics of the instances under an instance
+     */
+    Statistics(List<StatisticDefinition> definitions, Statistics parent, boolean rollUp) {
+        final long startTime = System.currentTimeMillis();
+        final List<Statistic> statistics = new ArrayList<>(definitions.size());
+        for (int i = 0; i < definitions.size(); i++) {
+            final Statistic parentStatistic = parent == null ? null : parent.statistics.get(i);
+            statistics.add(definitions.get(i).createStatistic(this, startTime, parentStatistic, rollUp));
+        }
+        this.statistics = Collections.unmodifiableList(statistics);
+    }
+
+    public List<Statistic> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Gets a statistic.
+     *
+     * @param name the name of the statistic
+     * @return the statistic, or {@code null} if there is none with the name
+     */
+    public Statistic getStatistic(String name) {
+        //There are only a handful of statistics, so a linear search is cheaper than hashing
+        for (Statistic statistic : statistics) {
+            if (statistic.getName().equals(name)) {
+                return statistic;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets a statistic of a given kind.
+     *
+     * @param name the name of the statistic
+     * @param type the class of the statistic
+     * @return the statistic
+     * @throws IllegalArgumentException if there is no such statistic, or it is of another kind
+     */
+    public <T extends Statistic> T getStatistic(String name, Class<T> type) {
+        final Statistic statistic = getStatistic(name);
+        if (statistic == null) {
+            throw new IllegalArgumentException("No statistic called '" + name + "'");
+        }
+        if (!type.isInstance(statistic)) {
+            throw new IllegalArgumentException("'" + name + "' is a " + statistic.getKind().getTypeName() +
+                    ", not a " + type.getSimpleName());
+        }
+        return type.cast(statistic);
+    }
+
+    /**
+     * Creates the histograms of the time statistics which keep one, and of the roll-ups their times get recorded in as
+     * well, rather than leaving it to the first time recorded. Each one is around 58 KB, so only do this for the
+     * statistics which are expected to get recorded in.
+     */
+    public void createHistograms() {
+        for (Statistic statistic : statistics) {
+            if (statistic instanceof TimeStatistic) {
+                ((TimeStatistic) statistic).createHistogram();
+            }
+        }
+    }
+
+    /**
+     * Gets a number which changes whenever a value gets recorded.
+     *
+     * @return the version
+     */
+    long getVersion() {
+        return updates.sum();
+    }
+
+    void changed() {
+        updates.increment();
+        if (!sampled) {
+            //Threads racing here register the same statistics, which the sampler only keeps once
+            sampled = true;
+            HistorySampler.getInstance().add(this);
+        }
+    }
+
+    void writeJson(JsonWriter json) throws IOException {
+        json.beginObject(statistics.size());
+        for (Statistic statistic : statistics) {
+            json.name(statistic.getName());
+            statistic.writeJson(json);
+        }
+        json.endObject();
+    }
+}
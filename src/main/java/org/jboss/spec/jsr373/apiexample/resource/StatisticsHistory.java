@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * The histories of the statistics of an instance, along with those of its roll-ups, as served on
+ * {@code <statistics url>/<name>/history} and {@code <statistics url>/roll-ups/<type>/<name>/history}. The values
+ * get sampled by the {@link HistorySampler} once they have been recorded in.
+ */
+public final class StatisticsHistory {
+    //The period returned if the query does not say
+    private static final long DEFAULT_PERIOD = 5 * 60 * 1000;
+
+    private final Statistics statistics;
+    private final RollUps rollUps;
+
+    /**
+     * @param statistics the statistics of the instance, or {@code null} if it has none
+     * @param rollUps the roll-ups of the instance, or {@code null} if it has none
+     */
+    StatisticsHistory(Statistics statistics, RollUps rollUps) {
+        this.statistics = statistics;
+        this.rollUps = rollUps;
+    }
+
+    /**
+     * Writes the history of one of the statistics. The parameters are those of the query string, and they all get
+     * validated before anything is written.
+     *
+     * @param writer the writer to write the document to
+     * @param href the url of the statistics document
+     * @param type the name of the type of the instances for a statistic of the roll-ups, or {@code null} for a
+     *             statistic of the instance itself
+     * @param name the name of the statistic
+     * @param from the start of the period, as an RFC 3339 time or in milliseconds since the epoch, or {@code null}
+     *             for five minutes before the end
+     * @param to the end of the period in the same format, or {@code null} for now
+     * @param step the number of seconds between the samples, at most a day, or {@code null} or {@code 0} for the
+     *             resolution of the history for the period
+     * @return {@code false} if there is no such statistic
+     * @throws IllegalArgumentException if any of the parameters are invalid
+     */
+    public boolean writeJson(PrintWriter writer, String href, String type, String name, String from, String to,
+                             String step) throws IOException {
+        final Statistics owner = type == null ? statistics : rollUps == null ? null : rollUps.getRollUp(type);
+        final Statistic statistic = owner == null ? null : owner.getStatistic(name);
+        if (statistic == null) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        final long toTime = to == null ? now : parseTime("to", to);
+        final long fromTime = from == null ? toTime - DEFAULT_PERIOD : parseTime("from", from);
+        final long stepSeconds = step == null ? 0 : parseLong("step", step);
+        final History.Query query = History.createQuery(now, fromTime, toTime, stepSeconds);
+
+        final JsonWriter json = new JsonWriter(writer);
+        json.beginObject(1).name(statistic.getKind().getTypeName() + "History");
+        json.beginObject(6);
+        json.name("links").beginList(2);
+        writeLink(json, "self", href + "/" + (type == null ? "" : ResourceTemplate.ROLL_UPS + "/" + type + "/") + name + "/" +
+                ResourceTemplate.HISTORY);
+        writeLink(json, "parent", href);
+        json.endList();
+        json.name("name").value(name);
+        json.name("unit").value(statistic.getUnit());
+        json.name("resolution").value(query.getResolution());
+        json.name("step").value(query.getStep());
+        json.name("samples");
+        query.writeSamples(json, statistic.getHistory(), statistic.getHistoryValueNames());
+        json.endObject().endObject();
+        json.flush();
+        return true;
+    }
+
+    private static long parseTime(String parameter, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            //Not a number, so try it as a time
+        }
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new IllegalArgumentException("'" + parameter + "' must be an RFC 3339 time or milliseconds since the epoch: " + value);
+        }
+    }
+
+    private static long parseLong(String parameter, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + parameter + "' must be a number: " + value);
+        }
+    }
+
+    private static void writeLink(JsonWriter json, String rel, String href) throws IOException {
+        json.beginObject(2);
+        json.name("rel").value(rel);
+        json.name("href").value(href);
+        json.endObject();
+    }
+}
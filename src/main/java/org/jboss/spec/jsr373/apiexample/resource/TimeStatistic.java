@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times an operation, following the TimeStatistic interface of JSR 77. The times are in the unit of the statistic.
+ * If the definition asks for it, the times also go into a {@link Histogram} to get their percentiles from.
+ */
+public class TimeStatistic extends Statistic {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"50", "90", "99", "99.9"};
+    //The averages over any period can be worked out from these, unlike the minimum and maximum
+    private static final String[] HISTORY_VALUE_NAMES = {"count", "total-time"};
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final LongAccumulator maxTime = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LongAccumulator minTime = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final boolean hasHistogram;
+    //The histogram is big, so it is only created for the statistics which get recorded in, see createHistogram()
+    private volatile Histogram histogram;
+    private final TimeStatistic parent;
+
+    TimeStatistic(StatisticDefinition definition, Statistics owner, long startTime, TimeStatistic parent) {
+        super(definition, owner, startTime);
+        this.parent = parent;
+        hasHistogram = definition.hasHistogram();
+    }
+
+    /**
+     * Creates the histogram, if the definition has one, along with those of the roll-ups the times get recorded in
+     * as well. Otherwise the first time recorded creates it.
+     */
+    void createHistogram() {
+        if (hasHistogram) {
+            getHistogram();
+        }
+        if (parent != null) {
+            parent.createHistogram();
+        }
+    }
+
+    private Histogram getHistogram() {
+        Histogram current = histogram;
+        if (current == null) {
+            //Locked so that threads racing to record the first time do not each allocate one
+            synchronized (this) {
+                current = histogram;
+                if (current == null) {
+                    current = new Histogram();
+                    histogram = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Records one execution of the operation.
+     *
+     * @param time how long it took
+     */
+    public void record(long time) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Negative time " + time);
+        }
+        if (hasHistogram) {
+            getHistogram().record(time);
+        }
+        maxTime.accumulate(time);
+        minTime.accumulate(time);
+        totalTime.add(time);
+        count.increment();
+        recorded();
+        if (parent != null) {
+            parent.record(time);
+        }
+    }
+
+    /**
+     * @return the number of times the operation was executed
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the longest execution time, or {@code 0} if there have been none
+     */
+    public long getMaxTime() {
+        final long max = maxTime.get();
+        return max == Long.MIN_VALUE ? 0 : max;
+    }
+
+    /**
+     * @return the shortest execution time, or {@code 0} if there have been none
+     */
+    public long getMinTime() {
+        final long min = minTime.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * @return the sum of the execution times
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * Gets the times at the 50th, 90th, 99th and 99.9th percentiles, to within 1%.
+     *
+     * @return the times, or {@code null} if the statistic does not keep a histogram
+     */
+    public long[] getPercentiles() {
+        if (!hasHistogram) {
+            return null;
+        }
+        final Histogram current = histogram;
+        if (current == null) {
+            return new long[PERCENTILES.length];
+        }
+        final long[] percentiles = current.getValuesAtPercentiles(PERCENTILES);
+        //The top of a bucket may be above any of the times in it
+        final long max = getMaxTime();
+        for (int i = 0; i < percentiles.length; i++) {
+            percentiles[i] = Math.min(percentiles[i], max);
+        }
+        return percentiles;
+    }
+
+    @Override
+    String[] getHistoryValueNames() {
+        return HISTORY_VALUE_NAMES;
+    }
+
+    @Override
+    void readHistoryValues(long[] values) {
+        values[0] = getCount();
+        values[1] = getTotalTime();
+    }
+
+    @Override
+    int getValueCount() {
+        return hasHistogram ? 5 : 4;
+    }
+
+    @Override
+    void writeValues(JsonWriter json) throws IOException {
+        json.name("count").value(getCount());
+        json.name("max-time").value(getMaxTime());
+        json.name("min-time").value(getMinTime());
+        json.name("total-time").value(getTotalTime());
+        if (hasHistogram) {
+            final long[] percentiles = getPercentiles();
+            json.name("percentiles").beginObject(percentiles.length);
+            for (int i = 0; i < percentiles.length; i++) {
+                json.name(PERCENTILE_NAMES[i]).value(percentiles[i]);
+            }
+            json.endObject();
+        }
+    }
+
+    static void writePercentileNames(JsonWriter json) throws IOException {
+        json.name("percentiles").beginList(PERCENTILE_NAMES.length);
+        for (String name : PERCENTILE_NAMES) {
+            json.value(name);
+        }
+        json.endList();
+    }
+}
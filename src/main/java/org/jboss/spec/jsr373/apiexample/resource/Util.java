@@ -21,15 +21,18 @@
  */
 package org.jboss.spec.jsr373.apiexample.resource;
 
-import org.jboss.dmr.ModelNode;
+import java.io.IOException;
+
 import org.jboss.spec.jsr373.apiexample.resource.objects.ManagedObjectType;
 
 /**
  * @author Kabir Khan
  */
 public class Util {
-    static void addTypeLinkToMap(ModelNode model, ManagedObjectType type) {
-        model.get(type.getName(), "rel").set("help");
-        model.get(type.getName(), "href").set(type.getTemplate().getUrl().toExternalForm());
+    static void writeTypeLink(JsonWriter json, ManagedObjectType type) throws IOException {
+        json.name(type.getName()).beginObject(2);
+        json.name("rel").value("help");
+        json.name("href").value(type.getTemplate().getHref());
+        json.endObject();
     }
 }
@@ -26,7 +26,6 @@ import java.util.Set;
 import org.jboss.dmr.ModelNode;
 import org.jboss.spec.jsr373.apiexample.resource.Attribute;
 import org.jboss.spec.jsr373.apiexample.resource.AttributeType;
-import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
 import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
 
 /**
@@ -48,9 +47,9 @@ public abstract class DeployedObjectType extends ManagedObjectType {
     }
 
     @Override
-    public void setDefaultAttributeValues(ResourceInstance.Builder builder) {
+    public void setDefaultAttributeValues(ResourceTemplate.Builder builder) {
         super.setDefaultAttributeValues(builder);
-        builder.setAttribute(DEPLOYMENT_DESCRIPTOR, new ModelNode("This seems a bit pointless to me? " +
+        builder.setDefaultAttributeValue(DEPLOYMENT_DESCRIPTOR, new ModelNode("This seems a bit pointless to me? " +
                 "If not we need to flesh out the format. I am not sure if xml is the best format to represent deployment" +
                 " descriptors and annotations."));
     }
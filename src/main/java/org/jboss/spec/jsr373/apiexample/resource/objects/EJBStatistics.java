@@ -0,0 +1,56 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource.objects;
+
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticDefinition;
+
+/**
+ * The statistics which the EJB types have in common, i.e. those of the EJBStats and SessionBeanStats of JSR 77.
+ */
+final class EJBStatistics {
+    static final String CREATE_COUNT = "CreateCount";
+    static final String REMOVE_COUNT = "RemoveCount";
+    static final String METHOD_READY_COUNT = "MethodReadyCount";
+
+    private EJBStatistics() {
+    }
+
+    static void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(CREATE_COUNT, StatisticDefinition.Kind.COUNT, StatisticDefinition.COUNT,
+                        "The number of times create was called")
+                        .build());
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(REMOVE_COUNT, StatisticDefinition.Kind.COUNT, StatisticDefinition.COUNT,
+                        "The number of times remove was called")
+                        .build());
+    }
+
+    static void addSessionBeanStatisticDescriptions(ResourceTemplate.Builder builder) {
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(METHOD_READY_COUNT, StatisticDefinition.Kind.RANGE, StatisticDefinition.COUNT,
+                        "The number of beans in the method-ready state")
+                        .build());
+    }
+}
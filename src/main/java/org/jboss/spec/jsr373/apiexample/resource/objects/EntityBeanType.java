@@ -24,10 +24,15 @@ package org.jboss.spec.jsr373.apiexample.resource.objects;
 import java.util.Collections;
 import java.util.Set;
 
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticDefinition;
+
 /**
  * @author Kabir Khan
  */
 public class EntityBeanType extends ManagedObjectType {
+    public static final String READY_COUNT = "ReadyCount";
+    public static final String POOLED_COUNT = "PooledCount";
     public static final EntityBeanType INSTANCE = new EntityBeanType();
 
     private EntityBeanType() {
@@ -38,4 +43,18 @@ public class EntityBeanType extends ManagedObjectType {
     public Set<ManagedObjectType> getParents() {
         return Collections.singleton(EJBModuleType.INSTANCE);
     }
+
+    @Override
+    public void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+        super.addStatisticDescriptions(builder);
+        EJBStatistics.addStatisticDescriptions(builder);
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(READY_COUNT, StatisticDefinition.Kind.RANGE, StatisticDefinition.COUNT,
+                        "The number of beans in the ready state")
+                        .build());
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(POOLED_COUNT, StatisticDefinition.Kind.RANGE, StatisticDefinition.COUNT,
+                        "The number of beans in the pooled state")
+                        .build());
+    }
 }
@@ -21,13 +21,26 @@
  */
 package org.jboss.spec.jsr373.apiexample.resource.objects;
 
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticDefinition;
+
 /**
  * @author Kabir Khan
  */
 public class JavaMailResourceType extends ResourceType {
+    public static final String SEND_MAIL_COUNT = "SendMailCount";
     public static final JavaMailResourceType INSTANCE = new JavaMailResourceType();
 
     private JavaMailResourceType() {
         super("JavaMail", "mail", "Identifies a JavaMail resource");
     }
+
+    @Override
+    public void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+        super.addStatisticDescriptions(builder);
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(SEND_MAIL_COUNT, StatisticDefinition.Kind.COUNT, StatisticDefinition.COUNT,
+                        "The number of mails sent")
+                        .build());
+    }
 }
@@ -0,0 +1,228 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource.objects;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the platform MXBeans of the running JVM on a background thread. Each sample is immutable and replaces the
+ * previous one with a volatile write, so readers always get a consistent set of values without locking, and never
+ * call the MXBeans themselves.
+ */
+public final class JvmSampler {
+    /** The number of milliseconds between samples. Defaults to 1000 */
+    public static final String SAMPLE_INTERVAL = "jsr.373.jvm.sample-interval-ms";
+
+    private static final JvmSampler INSTANCE = new JvmSampler();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private volatile Sample latest;
+    //Read without locking by getLatest(), to tell whether sampling has been stopped
+    private volatile ScheduledExecutorService executor;
+
+    private JvmSampler() {
+    }
+
+    public static JvmSampler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Takes a sample and starts sampling in the background, unless that is already happening.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        final long interval = Long.getLong(SAMPLE_INTERVAL, 1000);
+        if (interval <= 0) {
+            throw new IllegalArgumentException(SAMPLE_INTERVAL + " must be positive: " + interval);
+        }
+        //Any sample from before a stop() is out of date
+        latest = sample(latest == null ? 0 : latest.getVersion() + 1);
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "jsr373-jvm-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> latest = sample(latest.getVersion() + 1), interval, interval,
+                TimeUnit.MILLISECONDS);
+        this.executor = executor;
+    }
+
+    /**
+     * Stops sampling in the background. Sampling starts again on the next call to {@link #start()} or
+     * {@link #getLatest()}.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Gets the latest sample, starting the sampling if it has not been started or has been stopped. The first call
+     * after a {@link #stop()} takes a fresh sample rather than returning the one from before.
+     *
+     * @return the sample
+     */
+    public Sample getLatest() {
+        final Sample latest = this.latest;
+        if (latest != null && executor != null) {
+            return latest;
+        }
+        start();
+        return this.latest;
+    }
+
+    private Sample sample(long version) {
+        final MemoryUsage heap = memory.getHeapMemoryUsage();
+        final MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        long collections = 0;
+        long collectionTime = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            //-1 means the collector does not know
+            collections += Math.max(0, collector.getCollectionCount());
+            collectionTime += Math.max(0, collector.getCollectionTime());
+        }
+        return new Sample(version, heap.getUsed(), heap.getCommitted(), heap.getMax(), nonHeap.getUsed(),
+                nonHeap.getCommitted(), threads.getThreadCount(), threads.getPeakThreadCount(),
+                threads.getDaemonThreadCount(), collections, collectionTime, runtime.getStartTime(), runtime.getUptime());
+    }
+
+    /**
+     * The values read from the MXBeans at one point in time.
+     */
+    public static final class Sample {
+        private final long version;
+        private final long heapUsed;
+        private final long heapCommitted;
+        private final long heapMax;
+        private final long nonHeapUsed;
+        private final long nonHeapCommitted;
+        private final int threadCount;
+        private final int peakThreadCount;
+        private final int daemonThreadCount;
+        private final long collectionCount;
+        private final long collectionTime;
+        private final long startTime;
+        private final long uptime;
+
+        private Sample(long version, long heapUsed, long heapCommitted, long heapMax, long nonHeapUsed,
+                       long nonHeapCommitted, int threadCount, int peakThreadCount, int daemonThreadCount,
+                       long collectionCount, long collectionTime, long startTime, long uptime) {
+            this.version = version;
+            this.heapUsed = heapUsed;
+            this.heapCommitted = heapCommitted;
+            this.heapMax = heapMax;
+            this.nonHeapUsed = nonHeapUsed;
+            this.nonHeapCommitted = nonHeapCommitted;
+            this.threadCount = threadCount;
+            this.peakThreadCount = peakThreadCount;
+            this.daemonThreadCount = daemonThreadCount;
+            this.collectionCount = collectionCount;
+            this.collectionTime = collectionTime;
+            this.startTime = startTime;
+            this.uptime = uptime;
+        }
+
+        /**
+         * Gets the version of the sample, which is one more than that of the previous sample.
+         *
+         * @return the version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public long getHeapUsed() {
+            return heapUsed;
+        }
+
+        public long getHeapCommitted() {
+            return heapCommitted;
+        }
+
+        /**
+         * @return the maximum heap size, or {@code -1} if it is undefined
+         */
+        public long getHeapMax() {
+            return heapMax;
+        }
+
+        public long getNonHeapUsed() {
+            return nonHeapUsed;
+        }
+
+        public long getNonHeapCommitted() {
+            return nonHeapCommitted;
+        }
+
+        public int getThreadCount() {
+            return threadCount;
+        }
+
+        public int getPeakThreadCount() {
+            return peakThreadCount;
+        }
+
+        public int getDaemonThreadCount() {
+            return daemonThreadCount;
+        }
+
+        /**
+         * @return the number of garbage collections done by all the collectors
+         */
+        public long getCollectionCount() {
+            return collectionCount;
+        }
+
+        /**
+         * @return the milliseconds spent on garbage collection by all the collectors
+         */
+        public long getCollectionTime() {
+            return collectionTime;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getUptime() {
+            return uptime;
+        }
+    }
+}
@@ -24,11 +24,11 @@ package org.jboss.spec.jsr373.apiexample.resource.objects;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import org.jboss.dmr.ModelNode;
 import org.jboss.spec.jsr373.apiexample.resource.Attribute;
 import org.jboss.spec.jsr373.apiexample.resource.AttributeType;
-import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
 import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
 
 /**
@@ -39,6 +39,17 @@ public class JvmType extends ManagedObjectType {
     public static final String JAVA_VENDOR = "java-vendor";
     public static final String JAVA_VERSION = "java-version";
     public static final String NODE = "node";
+    public static final String HEAP_USED = "heap-used";
+    public static final String HEAP_COMMITTED = "heap-committed";
+    public static final String HEAP_MAX = "heap-max";
+    public static final String NON_HEAP_USED = "non-heap-used";
+    public static final String NON_HEAP_COMMITTED = "non-heap-committed";
+    public static final String THREAD_COUNT = "thread-count";
+    public static final String PEAK_THREAD_COUNT = "peak-thread-count";
+    public static final String DAEMON_THREAD_COUNT = "daemon-thread-count";
+    public static final String GC_COUNT = "gc-count";
+    public static final String GC_TIME = "gc-time";
+    public static final String UPTIME = "uptime";
     public static final JvmType INSTANCE = new JvmType("Identifies a JVM used by a server or a managed object");
 
 
@@ -68,16 +79,74 @@ public class JvmType extends ManagedObjectType {
         builder.addAttribute(
                 Attribute.createBuilder(NODE, AttributeType.STRING, "The node the JVM is running on")
                         .build());
+        addLiveAttribute(builder, HEAP_USED, AttributeType.LONG, "The bytes of heap memory in use");
+        addLiveAttribute(builder, HEAP_COMMITTED, AttributeType.LONG, "The bytes of heap memory committed by the JVM");
+        addLiveAttribute(builder, HEAP_MAX, AttributeType.LONG, "The maximum bytes of heap memory. Undefined if there is no maximum");
+        addLiveAttribute(builder, NON_HEAP_USED, AttributeType.LONG, "The bytes of non-heap memory in use");
+        addLiveAttribute(builder, NON_HEAP_COMMITTED, AttributeType.LONG, "The bytes of non-heap memory committed by the JVM");
+        addLiveAttribute(builder, THREAD_COUNT, AttributeType.INT, "The number of live threads");
+        addLiveAttribute(builder, PEAK_THREAD_COUNT, AttributeType.INT, "The highest number of live threads since the JVM started");
+        addLiveAttribute(builder, DAEMON_THREAD_COUNT, AttributeType.INT, "The number of live daemon threads");
+        addLiveAttribute(builder, GC_COUNT, AttributeType.LONG, "The number of garbage collections done by all the collectors");
+        addLiveAttribute(builder, GC_TIME, AttributeType.LONG, "The milliseconds spent on garbage collection by all the collectors");
+        addLiveAttribute(builder, UPTIME, AttributeType.LONG, "The milliseconds since the JVM started");
     }
 
-    public void setDefaultAttributeValues(ResourceInstance.Builder builder) {
+    private void addLiveAttribute(ResourceTemplate.Builder builder, String name, AttributeType type, String description) {
+        //Nillable since only the jvm the management servlet runs in gets the values
+        builder.addAttribute(
+                Attribute.createBuilder(name, type, description)
+                        .setNillable()
+                        .build());
+    }
+
+    public void setDefaultAttributeValues(ResourceTemplate.Builder builder) {
         super.setDefaultAttributeValues(builder);
-        builder.setAttribute(JAVA_VENDOR, new ModelNode(System.getProperty("java.vendor")));
-        builder.setAttribute(JAVA_VERSION, new ModelNode("java.version"));
-        try {
-            builder.setAttribute(NODE, new ModelNode(InetAddress.getLocalHost().getHostName()));
-        } catch (UnknownHostException e) {
-            throw new RuntimeException(e);
+        builder.setDefaultAttributeValue(JAVA_VENDOR, new ModelNode(System.getProperty("java.vendor")));
+        builder.setDefaultAttributeValue(JAVA_VERSION, new ModelNode(System.getProperty("java.version")));
+        builder.setDefaultAttributeValue(NODE, new ModelNode(HostName.NAME));
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public long getLiveVersion() {
+        return JvmSampler.getInstance().getLatest().getVersion();
+    }
+
+    @Override
+    public void setLiveAttributeValues(BiConsumer<String, ModelNode> setter) {
+        final JvmSampler.Sample sample = JvmSampler.getInstance().getLatest();
+        setter.accept(HEAP_USED, new ModelNode(sample.getHeapUsed()));
+        setter.accept(HEAP_COMMITTED, new ModelNode(sample.getHeapCommitted()));
+        if (sample.getHeapMax() >= 0) {
+            setter.accept(HEAP_MAX, new ModelNode(sample.getHeapMax()));
+        }
+        setter.accept(NON_HEAP_USED, new ModelNode(sample.getNonHeapUsed()));
+        setter.accept(NON_HEAP_COMMITTED, new ModelNode(sample.getNonHeapCommitted()));
+        setter.accept(THREAD_COUNT, new ModelNode(sample.getThreadCount()));
+        setter.accept(PEAK_THREAD_COUNT, new ModelNode(sample.getPeakThreadCount()));
+        setter.accept(DAEMON_THREAD_COUNT, new ModelNode(sample.getDaemonThreadCount()));
+        setter.accept(GC_COUNT, new ModelNode(sample.getCollectionCount()));
+        setter.accept(GC_TIME, new ModelNode(sample.getCollectionTime()));
+        setter.accept(UPTIME, new ModelNode(sample.getUptime()));
+    }
+
+    /**
+     * Resolves the host name once, since the lookup may go over the network.
+     */
+    private static class HostName {
+        private static final String NAME = resolve();
+
+        private static String resolve() {
+            try {
+                return InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                return InetAddress.getLoopbackAddress().getHostName();
+            }
         }
     }
 }
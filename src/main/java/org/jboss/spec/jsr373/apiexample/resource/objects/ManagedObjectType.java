@@ -25,11 +25,11 @@ package org.jboss.spec.jsr373.apiexample.resource.objects;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import org.jboss.dmr.ModelNode;
 import org.jboss.spec.jsr373.apiexample.resource.Attribute;
 import org.jboss.spec.jsr373.apiexample.resource.AttributeType;
-import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
 import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
 
 /**
@@ -113,11 +113,49 @@ public abstract class ManagedObjectType {
                         .build());
     }
 
-    public void setDefaultAttributeValues(ResourceInstance.Builder builder) {
-        builder.setAttribute(NAME, new ModelNode(builder.getName()));
-        builder.setAttribute(STATE_MANAGEABLE, new ModelNode(false));
-        builder.setAttribute(STATISTICS_PROVIDER, new ModelNode(false));
-        builder.setAttribute(EVENT_PROVIDER, new ModelNode(false));
+    /**
+     * Adds the statistics the instances provide. Types which add any are statistics providers.
+     *
+     * @param builder the builder of the template
+     */
+    public void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+    }
+
+    public void setDefaultAttributeValues(ResourceTemplate.Builder builder) {
+        //The name is taken from the instance unless it sets one
+        builder.setDefaultAttributeValue(STATE_MANAGEABLE, new ModelNode(false));
+        builder.setDefaultAttributeValue(STATISTICS_PROVIDER, new ModelNode(builder.hasStatistics()));
+        builder.setDefaultAttributeValue(EVENT_PROVIDER, new ModelNode(false));
+    }
+
+    /**
+     * Whether the values of some of the attributes change while the application is running. Only the instances which
+     * have been {@link org.jboss.spec.jsr373.apiexample.resource.ResourceInstance.Builder#setLive() made live} get
+     * the values, and their documents are rendered again whenever {@link #getLiveVersion()} changes. The attributes
+     * are left undefined in the documents of the other instances.
+     *
+     * @return {@code true} if the type is live
+     */
+    public boolean isLive() {
+        return false;
+    }
+
+    /**
+     * Gets the version of the live attribute values, which changes whenever the values do.
+     *
+     * @return the version
+     */
+    public long getLiveVersion() {
+        return 0;
+    }
+
+    /**
+     * Sets the current values of the live attributes. This is called whenever a document of a live instance is
+     * rendered, possibly from a request thread, so it must not block.
+     *
+     * @param setter takes the name and the value of each attribute
+     */
+    public void setLiveAttributeValues(BiConsumer<String, ModelNode> setter) {
     }
 
     public final void setTemplate(ResourceTemplate template) {
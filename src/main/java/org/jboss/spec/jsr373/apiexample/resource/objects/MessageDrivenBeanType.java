@@ -24,10 +24,14 @@ package org.jboss.spec.jsr373.apiexample.resource.objects;
 import java.util.Collections;
 import java.util.Set;
 
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticDefinition;
+
 /**
  * @author Kabir Khan
  */
 public class MessageDrivenBeanType extends ManagedObjectType {
+    public static final String MESSAGE_COUNT = "MessageCount";
     public static final MessageDrivenBeanType INSTANCE = new MessageDrivenBeanType();
 
     private MessageDrivenBeanType() {
@@ -38,4 +42,14 @@ public class MessageDrivenBeanType extends ManagedObjectType {
     public Set<ManagedObjectType> getParents() {
         return Collections.singleton(EJBModuleType.INSTANCE);
     }
+
+    @Override
+    public void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+        super.addStatisticDescriptions(builder);
+        EJBStatistics.addStatisticDescriptions(builder);
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(MESSAGE_COUNT, StatisticDefinition.Kind.COUNT, StatisticDefinition.COUNT,
+                        "The number of messages received")
+                        .build());
+    }
 }
@@ -26,7 +26,6 @@ import java.util.Set;
 import org.jboss.dmr.ModelNode;
 import org.jboss.spec.jsr373.apiexample.resource.Attribute;
 import org.jboss.spec.jsr373.apiexample.resource.AttributeType;
-import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
 import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
 
 /**
@@ -76,10 +75,10 @@ public class ServerType extends ManagedObjectType {
                         .build());
     }
 
-    public void setDefaultAttributeValues(ResourceInstance.Builder builder) {
+    public void setDefaultAttributeValues(ResourceTemplate.Builder builder) {
         super.setDefaultAttributeValues(builder);
-        builder.setAttribute(ServerType.SERVER_VENDOR, new ModelNode("Server Co"));
-        builder.setAttribute(ServerType.SERVER_VERSION, new ModelNode("3.7.3"));
+        builder.setDefaultAttributeValue(ServerType.SERVER_VENDOR, new ModelNode("Server Co"));
+        builder.setDefaultAttributeValue(ServerType.SERVER_VERSION, new ModelNode("3.7.3"));
     }
 
 }
@@ -24,10 +24,18 @@ package org.jboss.spec.jsr373.apiexample.resource.objects;
 import java.util.Collections;
 import java.util.Set;
 
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticDefinition;
+
 /**
  * @author Kabir Khan
  */
 public class ServletType extends ManagedObjectType {
+    public static final String SERVICE_TIME = "ServiceTime";
+    public static final String RESPONSE_BYTES = "ResponseBytes";
+    //The number of responses with each class of status code, e.g. STATUS_COUNTS[2] for 2xx
+    private static final String[] STATUS_COUNTS = {null, "Status1xxCount", "Status2xxCount", "Status3xxCount",
+            "Status4xxCount", "Status5xxCount"};
     public static final ServletType INSTANCE = new ServletType();
 
     private ServletType() {
@@ -38,4 +46,35 @@ public class ServletType extends ManagedObjectType {
     public Set<ManagedObjectType> getParents() {
         return Collections.singleton(WebModuleType.INSTANCE);
     }
+
+    /**
+     * Gets the name of the statistic counting the responses with a status code.
+     *
+     * @param status the status code
+     * @return the name of the statistic, or {@code null} if the status code is not a valid one
+     */
+    public static String getStatusCountName(int status) {
+        final int statusClass = status / 100;
+        return statusClass >= 1 && statusClass < STATUS_COUNTS.length ? STATUS_COUNTS[statusClass] : null;
+    }
+
+    @Override
+    public void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+        super.addStatisticDescriptions(builder);
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(SERVICE_TIME, StatisticDefinition.Kind.TIME, StatisticDefinition.MICROSECOND,
+                        "The execution time of the servlet's service method")
+                        .setHistogram()
+                        .build());
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(RESPONSE_BYTES, StatisticDefinition.Kind.COUNT, StatisticDefinition.BYTE,
+                        "The number of bytes written in the bodies of the responses")
+                        .build());
+        for (int i = 1; i < STATUS_COUNTS.length; i++) {
+            builder.addStatistic(
+                    StatisticDefinition.createBuilder(STATUS_COUNTS[i], StatisticDefinition.Kind.COUNT, StatisticDefinition.COUNT,
+                            "The number of responses with a " + i + "xx status code")
+                            .build());
+        }
+    }
 }
@@ -24,10 +24,14 @@ package org.jboss.spec.jsr373.apiexample.resource.objects;
 import java.util.Collections;
 import java.util.Set;
 
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticDefinition;
+
 /**
  * @author Kabir Khan
  */
 public class StatefulSessionBeanType extends ManagedObjectType {
+    public static final String PASSIVE_COUNT = "PassiveCount";
     public static final StatefulSessionBeanType INSTANCE = new StatefulSessionBeanType();
 
     private StatefulSessionBeanType() {
@@ -38,4 +42,15 @@ public class StatefulSessionBeanType extends ManagedObjectType {
     public Set<ManagedObjectType> getParents() {
         return Collections.singleton(EJBModuleType.INSTANCE);
     }
+
+    @Override
+    public void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+        super.addStatisticDescriptions(builder);
+        EJBStatistics.addStatisticDescriptions(builder);
+        EJBStatistics.addSessionBeanStatisticDescriptions(builder);
+        builder.addStatistic(
+                StatisticDefinition.createBuilder(PASSIVE_COUNT, StatisticDefinition.Kind.RANGE, StatisticDefinition.COUNT,
+                        "The number of beans in the passive state")
+                        .build());
+    }
 }
@@ -24,6 +24,8 @@ package org.jboss.spec.jsr373.apiexample.resource.objects;
 import java.util.Collections;
 import java.util.Set;
 
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+
 /**
  * @author Kabir Khan
  */
@@ -38,4 +40,11 @@ public class StatelessSessionBeanType extends ManagedObjectType {
     public Set<ManagedObjectType> getParents() {
         return Collections.singleton(EJBModuleType.INSTANCE);
     }
+
+    @Override
+    public void addStatisticDescriptions(ResourceTemplate.Builder builder) {
+        super.addStatisticDescriptions(builder);
+        EJBStatistics.addStatisticDescriptions(builder);
+        EJBStatistics.addSessionBeanStatisticDescriptions(builder);
+    }
 }
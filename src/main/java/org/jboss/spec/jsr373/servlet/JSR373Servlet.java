@@ -23,9 +23,9 @@ package org.jboss.spec.jsr373.servlet;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.Reader;
-import java.net.URL;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Locale;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -33,35 +33,43 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.jboss.spec.jsr373.apiexample.ExampleGenerator;
+import org.jboss.spec.jsr373.apiexample.Document;
 import org.jboss.spec.jsr373.apiexample.UrlUtil;
+import org.jboss.spec.jsr373.apiexample.resource.RouteTrie;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticsHistory;
 
 /**
  * @author Kabir Khan
  */
-@WebServlet(urlPatterns = {"/contents/*", "/index.html"})
+@WebServlet(urlPatterns = {"/contents/*", "/index.html", "/health"})
 public class JSR373Servlet extends HttpServlet {
-    private static volatile UrlUtil.ServletUrlRegistry urlRegistry;
-    private static volatile List<URL> templateUrls;
-    private static volatile List<URL> instanceUrls;
+    //Templates never change while deployed, while instances should be revalidated using their ETag
+    private static final String TEMPLATE_CACHE_CONTROL = "public, max-age=86400";
+    private static final String INSTANCE_CACHE_CONTROL = "no-cache";
+    //How many seconds clients should wait before trying again while the model is being generated
+    private static final String RETRY_AFTER_SECONDS = "2";
+    private static final String DMR_MEDIA_TYPE = Document.Format.DMR.getContentType();
+
+    private volatile ModelInitializer initializer;
+
+    @Override
+    public void init() throws ServletException {
+        initializer = ModelInitializer.getInstance(getServletContext());
+        if (initializer == null) {
+            throw new ServletException(ModelInitializer.class.getSimpleName() + " was not registered");
+        }
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        if (urlRegistry == null) {
-            synchronized (this) {
-                if (urlRegistry == null) {
-                    UrlUtil.ServletUrlRegistry reg = new UrlUtil.ServletUrlRegistry();
-                    UrlUtil urlUtil = UrlUtil.Factory.createServletInstance(reg);
-                    ExampleGenerator generator = new ExampleGenerator(urlUtil);
-                    try {
-                        generator.generate();
-                    } catch (Exception e) {
-                        throw new ServletException("Initialising the data failed", e);
-                    }
-                    urlRegistry = reg;
-                    templateUrls = urlUtil.getAllTemplateUrls();
-                    instanceUrls = urlUtil.getAllInstanceUrls();
-                }
-            }
+        if (req.getServletPath().equals("/health")) {
+            health(resp);
+            return;
+        }
+
+        if (!initializer.isReady()) {
+            notReady(resp);
+            return;
         }
 
         if (req.getServletPath().equals("/index.html")) {
@@ -69,29 +77,213 @@ public class JSR373Servlet extends HttpServlet {
             return;
         }
 
-        final URL url = new URL(req.getRequestURL().toString());
-        if (url.toExternalForm().endsWith("/")) {
-            String urlString = url.toExternalForm();
+        if (req.getRequestURI().endsWith("/")) {
+            String urlString = req.getRequestURL().toString();
             urlString = urlString.substring(0, urlString.length() - 1);
             resp.sendRedirect(urlString);
+            return;
         }
 
-        final Reader reader = urlRegistry.getReader(url);
-        if (reader == null) {
-            resp.sendError(resp.SC_NOT_FOUND, url.toExternalForm() + " could not be found");
+        //The documents are keyed on their path relative to /contents, so the lookup never has to create a URL
+        final String path = UrlUtil.Factory.normalisePath(req.getPathInfo());
+        final RouteTrie.Match route = initializer.getRoutes().match(path);
+        if (route == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, req.getRequestURL() + " could not be found");
             return;
         }
+        final Document document;
+        switch (route.getKind()) {
+            case OPERATION:
+                resp.setHeader("Allow", "POST");
+                resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Operations must be invoked with POST");
+                return;
+            case HISTORY:
+                history(req, resp, route);
+                return;
+            case TEMPLATE_COLLECTION:
+            case COLLECTION:
+                document = initializer.getRegistry().getCollection(path);
+                break;
+            default:
+                document = initializer.getRegistry().getDocument(path);
+        }
+        if (document == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, req.getRequestURL() + " could not be found");
+            return;
+        }
+        final Document.Format format = negotiateFormat(req);
+        resp.setContentType(format.getContentType());
+        resp.addHeader("Vary", "Accept, Accept-Encoding");
+        resp.setHeader("Cache-Control", document.isImmutable() ? TEMPLATE_CACHE_CONTROL : INSTANCE_CACHE_CONTROL);
+        final boolean gzip = acceptsGzip(req) && document.isGzipped(format);
+        final String etag = document.getETag(format, gzip);
+        resp.setHeader("ETag", etag);
+        if (matchesIfNoneMatch(req, etag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (gzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        resp.setContentLength(document.getLength(format, gzip));
+        document.writeTo(resp.getOutputStream(), format, gzip);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (req.getPathInfo() == null || !req.getServletPath().equals("/contents")) {
+            super.doPost(req, resp);
+            return;
+        }
+
+        if (!initializer.isReady()) {
+            notReady(resp);
+            return;
+        }
+
+        final RouteTrie.Match route = initializer.getRoutes().match(UrlUtil.Factory.normalisePath(req.getPathInfo()));
+        if (route == null || (route.getKind() == RouteTrie.Kind.OPERATION &&
+                initializer.getRegistry().getDocument(route.getInstancePath()) == null)) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, req.getRequestURL() + " could not be found");
+            return;
+        }
+        if (route.getKind() != RouteTrie.Kind.OPERATION) {
+            resp.setHeader("Allow", "GET");
+            resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Only operations can be invoked with POST");
+            return;
+        }
+        //This is a mock-up, so there is nothing to start or stop
+        resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, "The '" + route.getOperation() + "' operation is not implemented");
+    }
+
+    /**
+     * Returns the history of a statistic. It depends on the query string and changes every second, so unlike the
+     * documents it is rendered for each request and not cached.
+     */
+    private void history(HttpServletRequest req, HttpServletResponse resp, RouteTrie.Match route) throws IOException {
+        final String statisticsPath = route.getStatisticsPath();
+        final StatisticsHistory history = initializer.getStatisticsHistory(statisticsPath);
+        if (history == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, req.getRequestURL() + " could not be found");
+            return;
+        }
+        resp.setContentType("application/json; charset=utf-8");
+        resp.setHeader("Cache-Control", "no-store");
         try {
-            resp.setContentType("application/json; charset=utf-8");
-            PrintWriter writer = resp.getWriter();
-            char[] buffer = new char[1024];
-            int len;
-            while ((len = reader.read(buffer)) >= 0) {
-                writer.write(buffer, 0, len);
+            if (!history.writeJson(resp.getWriter(), initializer.toHref(statisticsPath), route.getRolledUpType(),
+                    route.getStatisticName(), req.getParameter("from"), req.getParameter("to"), req.getParameter("step"))) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND, req.getRequestURL() + " could not be found");
+            }
+        } catch (IllegalArgumentException e) {
+            //Nothing has been written if the parameters are invalid
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private boolean matchesIfNoneMatch(HttpServletRequest req, String etag) {
+        final Enumeration<String> headers = req.getHeaders("If-None-Match");
+        while (headers.hasMoreElements()) {
+            for (String tag : headers.nextElement().split(",")) {
+                tag = tag.trim();
+                //If-None-Match uses the weak comparison
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag) || tag.equals("*")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean acceptsGzip(HttpServletRequest req) {
+        //An explicit gzip entry takes precedence over '*', whatever order they come in
+        float gzipQuality = -1;
+        float wildcardQuality = -1;
+        final Enumeration<String> headers = req.getHeaders("Accept-Encoding");
+        while (headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                final int index = coding.indexOf(';');
+                final String name = (index < 0 ? coding : coding.substring(0, index)).trim();
+                final float quality = index < 0 ? 1 : parseQuality(coding.substring(index + 1));
+                if (name.equalsIgnoreCase("gzip")) {
+                    gzipQuality = quality;
+                } else if (name.equals("*")) {
+                    wildcardQuality = quality;
+                }
+            }
+        }
+        return gzipQuality < 0 ? wildcardQuality > 0 : gzipQuality > 0;
+    }
+
+    /**
+     * Works out whether to serve json or DMR. DMR is only served if it is asked for by name, and with at least the
+     * same quality as json. This way browsers and anything else which accepts any media type get json.
+     */
+    private Document.Format negotiateFormat(HttpServletRequest req) {
+        float dmrQuality = 0;
+        float jsonQuality = 0;
+        //The most specific range which matches json decides its quality
+        int jsonSpecificity = -1;
+        final Enumeration<String> headers = req.getHeaders("Accept");
+        while (headers.hasMoreElements()) {
+            for (String range : headers.nextElement().split(",")) {
+                final int index = range.indexOf(';');
+                final String type = (index < 0 ? range : range.substring(0, index)).trim().toLowerCase(Locale.ENGLISH);
+                final float quality = index < 0 ? 1 : parseQuality(range.substring(index + 1));
+                final int specificity;
+                if (type.equals(DMR_MEDIA_TYPE)) {
+                    dmrQuality = quality;
+                    continue;
+                } else if (type.equals("application/json")) {
+                    specificity = 2;
+                } else if (type.equals("application/*")) {
+                    specificity = 1;
+                } else if (type.equals("*/*")) {
+                    specificity = 0;
+                } else {
+                    continue;
+                }
+                if (specificity > jsonSpecificity) {
+                    jsonSpecificity = specificity;
+                    jsonQuality = quality;
+                }
+            }
+        }
+        return dmrQuality > 0 && dmrQuality >= jsonQuality ? Document.Format.DMR : Document.Format.JSON;
+    }
+
+    private float parseQuality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            final int index = parameter.indexOf('=');
+            if (index > 0 && parameter.substring(0, index).trim().equalsIgnoreCase("q")) {
+                try {
+                    return Float.parseFloat(parameter.substring(index + 1).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
             }
-        } finally {
-            reader.close();
         }
+        return 1;
+    }
+
+    private void health(HttpServletResponse resp) throws IOException {
+        if (!initializer.isReady()) {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        resp.setContentType("application/json; charset=utf-8");
+        resp.setHeader("Cache-Control", "no-store");
+        PrintWriter writer = resp.getWriter();
+        initializer.getHealth().writeJSONString(writer, false);
+    }
+
+    private void notReady(HttpServletResponse resp) throws ServletException, IOException {
+        if (initializer.getStatus() == ModelInitializer.Status.FAILED) {
+            throw new ServletException("Initialising the data failed", initializer.getFailure());
+        }
+        resp.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+        resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The model is still being generated");
     }
 
     private void indexHtml(HttpServletResponse resp) throws ServletException, IOException {
@@ -111,7 +303,7 @@ public class JSR373Servlet extends HttpServlet {
         writer.write("<p>This is the list of the 'templates' which describe what is available at each instance address/type. " +
                 "The instances in the next section link to these via their 'help' links.</p>");
         writer.write("<ul>");
-        printUrls(templateUrls, writer);
+        printUrls(initializer.getTemplatePaths(), writer);
         writer.write("</ul>");
         writer.write("<h2>Instances</h2>");
         writer.write("<p>This is the list of the instances in the mock-up. You would probably normally start at the domain or " +
@@ -119,14 +311,15 @@ public class JSR373Servlet extends HttpServlet {
         writer.write("<p>All instances belong to a collection, so where the instance url is e.g. at the path <i>/domains/main</i>, " +
                 "the collection url can be found at <i>/domains</i></p>");
         writer.write("<ul>");
-        printUrls(instanceUrls, writer);
+        printUrls(initializer.getInstancePaths(), writer);
         writer.write("</ul>");
         writer.write("</body>");
         writer.write("</html>");
     }
 
-    private void printUrls(List<URL> urls,  PrintWriter writer) {
-        for (URL url : urls) {
+    private void printUrls(List<String> paths,  PrintWriter writer) {
+        for (String path : paths) {
+            final String url = initializer.toHref(path);
             writer.write("<li><a href=\"" + url + "\">" + url + "</a></li>");
         }
     }
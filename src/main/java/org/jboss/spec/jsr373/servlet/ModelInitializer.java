@@ -0,0 +1,326 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.spec.jsr373.servlet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.spec.jsr373.apiexample.Document;
+import org.jboss.spec.jsr373.apiexample.DocumentRegistry;
+import org.jboss.spec.jsr373.apiexample.ExampleGenerator;
+import org.jboss.spec.jsr373.apiexample.PackedArchive;
+import org.jboss.spec.jsr373.apiexample.TopologyConfig;
+import org.jboss.spec.jsr373.apiexample.UrlUtil;
+import org.jboss.spec.jsr373.apiexample.resource.HistorySampler;
+import org.jboss.spec.jsr373.apiexample.resource.ResourceTemplate;
+import org.jboss.spec.jsr373.apiexample.resource.RouteTrie;
+import org.jboss.spec.jsr373.apiexample.resource.Statistics;
+import org.jboss.spec.jsr373.apiexample.resource.StatisticsHistory;
+import org.jboss.spec.jsr373.apiexample.resource.objects.JvmSampler;
+
+/**
+ * Generates the model in the background as soon as the application is deployed, so that the first request does not
+ * have to wait for it (or fail if it takes too long). Until the model has been published {@link #isReady()} returns
+ * {@code false}, and the servlet turns requests away.
+ */
+@WebListener
+public class ModelInitializer implements ServletContextListener {
+    private static final String ATTRIBUTE = ModelInitializer.class.getName();
+
+    /** Set this system property to the file to save the generated model to, and to reload it from on the next start */
+    public static final String SNAPSHOT = "jsr.373.snapshot";
+
+    enum Status {
+        PENDING,
+        GENERATING,
+        READY,
+        FAILED
+    }
+
+    enum Source {
+        GENERATED,
+        ARCHIVE,
+        SNAPSHOT
+    }
+
+    private final UrlUtil.ServletUrlRegistry urlRegistry = new UrlUtil.ServletUrlRegistry();
+    private volatile ServletContext servletContext;
+    private volatile ExecutorService executor;
+    private volatile Status status = Status.PENDING;
+    private volatile Source source;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile Throwable failure;
+    private volatile UrlUtil urlUtil;
+    private volatile PackedArchive archive;
+    private volatile DocumentRegistry archiveRegistry;
+    private volatile String managementModuleName;
+    private volatile Statistics managementStatistics;
+    private volatile RouteTrie routes;
+    private volatile List<String> templatePaths;
+    private volatile List<String> instancePaths;
+
+    static ModelInitializer getInstance(ServletContext context) {
+        return (ModelInitializer) context.getAttribute(ATTRIBUTE);
+    }
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        servletContext = sce.getServletContext();
+        servletContext.setAttribute(ATTRIBUTE, this);
+        //The model includes the web module of this application, named like a deployed war would be
+        final String contextPath = servletContext.getContextPath();
+        managementModuleName = (contextPath.isEmpty() ? "ROOT" : contextPath.substring(1)) + ".war";
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "jsr373-model-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::generate);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        sce.getServletContext().removeAttribute(ATTRIBUTE);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        JvmSampler.getInstance().stop();
+        HistorySampler.getInstance().stop();
+    }
+
+    private void generate() {
+        startTime = System.currentTimeMillis();
+        status = Status.GENERATING;
+        Path snapshot = null;
+        String fingerprint = null;
+        try {
+            UrlUtil urlUtil = UrlUtil.Factory.createServletInstance(urlRegistry);
+            //This creates the templates, which the routes need even if the documents get served from an archive
+            ExampleGenerator generator = new ExampleGenerator(urlUtil, TopologyConfig.fromSystemProperties());
+            generator.setManagementServlet(managementModuleName, JSR373Servlet.class.getSimpleName());
+            final String archiveFile = System.getProperty(PackedArchive.ARCHIVE);
+            final String snapshotFile = System.getProperty(SNAPSHOT);
+            PackedArchive archive = null;
+            if (archiveFile != null) {
+                archive = PackedArchive.open(Paths.get(archiveFile));
+                source = Source.ARCHIVE;
+                if (!archive.getFingerprint().equals(generator.getFingerprint())) {
+                    //The documents of this servlet get served anyway, but the ones in the archive may not link to them
+                    servletContext.log("The archive " + archiveFile + " was generated from " + archive.getFingerprint() +
+                            " rather than " + generator.getFingerprint() + ", so it may not include this servlet");
+                }
+            } else if (snapshotFile != null) {
+                archive = loadSnapshot(Paths.get(snapshotFile), generator.getFingerprint());
+                if (archive != null) {
+                    source = Source.SNAPSHOT;
+                }
+            }
+            if (archive != null) {
+                //The statistics of this servlet are recorded while running, so they can not come from the archive
+                generator.generateManagementServlet();
+                //The collections holding the documents of this servlet list the archive's entries along with them
+                urlRegistry.addEntries(archive, archive.getInstancePaths());
+                urlRegistry.publish();
+                templatePaths = archive.getTemplatePaths();
+                instancePaths = archive.getInstancePaths();
+                archiveRegistry = new ArchiveRegistry(archive, urlRegistry);
+                this.archive = archive;
+            } else {
+                generator.generate();
+                urlRegistry.publish();
+                templatePaths = urlUtil.getAllTemplatePaths();
+                instancePaths = urlUtil.getAllInstancePaths();
+                this.urlUtil = urlUtil;
+                source = Source.GENERATED;
+                if (snapshotFile != null) {
+                    snapshot = Paths.get(snapshotFile);
+                    fingerprint = generator.getFingerprint();
+                }
+            }
+            managementStatistics = generator.getManagementServletStatistics();
+            routes = RouteTrie.compile(ResourceTemplate.getAllTemplates());
+            HistorySampler.getInstance().start();
+            endTime = System.currentTimeMillis();
+            status = Status.READY;
+        } catch (Throwable t) {
+            failure = t;
+            endTime = System.currentTimeMillis();
+            status = Status.FAILED;
+            servletContext.log("Could not generate the model", t);
+            return;
+        }
+        //Packing the model takes a while, so it is saved once the model is being served
+        if (snapshot != null) {
+            saveSnapshot(snapshot, fingerprint);
+        }
+    }
+
+    /**
+     * Loads the snapshot saved by an earlier run, as long as it was generated from the same inputs by the same version
+     * of the generator and is not corrupt.
+     *
+     * @return the snapshot, or {@code null} if the model needs generating
+     */
+    private PackedArchive loadSnapshot(Path file, String fingerprint) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            final PackedArchive snapshot = PackedArchive.open(file);
+            if (!snapshot.getFingerprint().equals(fingerprint)) {
+                servletContext.log("Regenerating the model, since the snapshot " + file + " was generated from " +
+                        snapshot.getFingerprint() + " rather than " + fingerprint);
+                return null;
+            }
+            snapshot.verify();
+            return snapshot;
+        } catch (IOException e) {
+            servletContext.log("Regenerating the model, since the snapshot " + file + " could not be loaded", e);
+            return null;
+        }
+    }
+
+    private void saveSnapshot(Path file, String fingerprint) {
+        try {
+            PackedArchive.write(file, urlRegistry, templatePaths, instancePaths, urlUtil.toHref(""), fingerprint);
+        } catch (IOException | RuntimeException e) {
+            //The model is being served, so carry on without the snapshot
+            servletContext.log("Could not save the snapshot " + file, e);
+        }
+    }
+
+    boolean isReady() {
+        return status == Status.READY;
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    Throwable getFailure() {
+        return failure;
+    }
+
+    DocumentRegistry getRegistry() {
+        final DocumentRegistry archiveRegistry = this.archiveRegistry;
+        return archiveRegistry != null ? archiveRegistry : urlRegistry;
+    }
+
+    /**
+     * Gets the statistics to record the requests to the servlet in.
+     *
+     * @return the statistics, or {@code null} until the model is ready
+     */
+    Statistics getManagementStatistics() {
+        return managementStatistics;
+    }
+
+    List<String> getTemplatePaths() {
+        return templatePaths;
+    }
+
+    List<String> getInstancePaths() {
+        return instancePaths;
+    }
+
+    RouteTrie getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Gets the history of the statistics of one of the instances generated while running, which are the only ones
+     * recording anything.
+     *
+     * @param path the path of the statistics document
+     * @return the history, or {@code null} if there is none for the path
+     */
+    StatisticsHistory getStatisticsHistory(String path) {
+        return urlRegistry.getStatisticsHistory(path);
+    }
+
+    String toHref(String path) {
+        final PackedArchive archive = this.archive;
+        return archive != null ? archive.toHref(path) : urlUtil.toHref(path);
+    }
+
+    /**
+     * Serves the documents generated for the management servlet and the collections they are entries of, and
+     * everything else from the archive.
+     */
+    private static class ArchiveRegistry implements DocumentRegistry {
+        private final PackedArchive archive;
+        private final UrlUtil.ServletUrlRegistry generated;
+
+        ArchiveRegistry(PackedArchive archive, UrlUtil.ServletUrlRegistry generated) {
+            this.archive = archive;
+            this.generated = generated;
+        }
+
+        @Override
+        public Document getDocument(String path) {
+            final Document document = generated.getDocument(path);
+            return document != null ? document : archive.getDocument(path);
+        }
+
+        @Override
+        public Document getCollection(String path) {
+            return generated.hasCollection(path) ? generated.getCollection(path) : archive.getCollection(path);
+        }
+    }
+
+    ModelNode getHealth() {
+        //Read the status first, since the other fields are written before it is changed
+        final Status status = this.status;
+        ModelNode health = new ModelNode();
+        health.get("status").set(status.toString());
+        final PackedArchive archive = this.archive;
+        health.get("documents-written").set(archive != null ? archive.getDocumentCount() : urlRegistry.getWrittenDocumentCount());
+        if (status != Status.PENDING) {
+            health.get("start-time").set(startTime);
+            long end = status == Status.GENERATING ? System.currentTimeMillis() : endTime;
+            health.get("elapsed-millis").set(end - startTime);
+        }
+        if (status == Status.READY) {
+            health.get("source").set(source.toString());
+        }
+        if (status == Status.FAILED) {
+            health.get("failure").set(failure.toString());
+        }
+        return health;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.servlet;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.jboss.spec.jsr373.apiexample.resource.CountStatistic;
+import org.jboss.spec.jsr373.apiexample.resource.Statistics;
+import org.jboss.spec.jsr373.apiexample.resource.TimeStatistic;
+import org.jboss.spec.jsr373.apiexample.resource.objects.ServletType;
+
+/**
+ * Records the requests to {@link JSR373Servlet} in the statistics of the servlet's instance in the model, so that
+ * the servlet can be watched through the same api as everything else. The time of each request goes into the
+ * ServiceTime statistic along with its histogram, and the bytes of the bodies and the status codes get counted.
+ * Recording never blocks the requests.
+ * <p/>
+ * Requests are not recorded until the model is ready, since the servlet's instance does not exist until then.
+ */
+@WebFilter(urlPatterns = {"/contents/*", "/index.html", "/health"})
+public class StatisticsFilter implements Filter {
+    private volatile ModelInitializer initializer;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        initializer = ModelInitializer.getInstance(filterConfig.getServletContext());
+        if (initializer == null) {
+            throw new ServletException(ModelInitializer.class.getSimpleName() + " was not registered");
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        final Statistics statistics = initializer.getManagementStatistics();
+        if (statistics == null || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        final long start = System.nanoTime();
+        final CountingResponse counting = new CountingResponse((HttpServletResponse) response);
+        boolean failed = true;
+        try {
+            chain.doFilter(request, counting);
+            counting.flushWriter();
+            failed = false;
+        } finally {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            statistics.getStatistic(ServletType.SERVICE_TIME, TimeStatistic.class).record(micros);
+            statistics.getStatistic(ServletType.RESPONSE_BYTES, CountStatistic.class).add(counting.getBytes());
+            //An exception ends up as a 500 unless the response had already been committed with another status
+            final int status = failed && !response.isCommitted() ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : counting.getStatus();
+            final String statusCount = ServletType.getStatusCountName(status);
+            if (statusCount != null) {
+                statistics.getStatistic(statusCount, CountStatistic.class).increment();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Counts the bytes written to the body of the response.
+     */
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private CountingOutputStream output;
+        private PrintWriter writer;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return getCountingOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (output != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                //Encode the characters here, so that the bytes can be counted
+                writer = new PrintWriter(new OutputStreamWriter(getCountingOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        private CountingOutputStream getCountingOutputStream() throws IOException {
+            if (output == null) {
+                output = new CountingOutputStream(super.getOutputStream());
+            }
+            return output;
+        }
+
+        void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        long getBytes() {
+            return output == null ? 0 : output.bytes;
+        }
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+        private long bytes;
+
+        CountingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            bytes += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
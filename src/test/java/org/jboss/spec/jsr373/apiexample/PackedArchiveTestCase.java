@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a snapshot which has been truncated or corrupted is turned down with an {@code IOException}, so that
+ * the servlet regenerates the model rather than failing.
+ */
+public class PackedArchiveTestCase {
+    private static final String FINGERPRINT = "test";
+
+    private Path directory;
+    private Path file;
+    private String path;
+
+    @Before
+    public void writeArchive() throws IOException {
+        directory = Files.createTempDirectory("jsr373");
+        file = directory.resolve("snapshot.jsr373");
+        final UrlUtil.ServletUrlRegistry registry = new UrlUtil.ServletUrlRegistry();
+        final UrlUtil urlUtil = UrlUtil.Factory.createServletInstance(registry);
+        path = urlUtil.createInstancePath("domains", null, "main");
+        try (PrintWriter writer = urlUtil.getWriter(path)) {
+            writer.print("{\"name\" : \"main\"}");
+        }
+        registry.publish();
+        PackedArchive.write(file, registry, Collections.emptyList(), Collections.singletonList(path),
+                urlUtil.toHref(""), FINGERPRINT);
+    }
+
+    @After
+    public void deleteArchive() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testIntact() throws IOException {
+        final PackedArchive archive = PackedArchive.open(file);
+        archive.verify();
+        Assert.assertEquals(FINGERPRINT, archive.getFingerprint());
+        Assert.assertEquals(Collections.singletonList(path), archive.getInstancePaths());
+        Assert.assertNotNull(archive.getDocument(path));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        for (int length : new int[] {0, 8, 16, 40, 60, bytes.length / 2, bytes.length - 1}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertCorrupt("truncated to " + length + " bytes");
+        }
+    }
+
+    @Test
+    public void testCorruptedHeader() throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        //The counts, the offsets and the lengths which the header is made up of
+        for (int position = 16; position < 60; position += 4) {
+            for (int value : new int[] {-5, bytes.length, Integer.MAX_VALUE}) {
+                final ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone());
+                corrupted.putInt(position, value);
+                Files.write(file, corrupted.array());
+                assertCorrupt("the int at " + position + " set to " + value);
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptedBody() throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+        assertCorrupt("the last byte flipped");
+    }
+
+    private void assertCorrupt(String description) {
+        try {
+            final PackedArchive archive = PackedArchive.open(file);
+            archive.verify();
+            Assert.fail("The archive with " + description + " was not found to be corrupt");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jboss.spec.jsr373.apiexample.resource.ResourceInstance;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that serializing a synthetic topology with a fork/join pool publishes the same documents and collections as
+ * serializing it on the calling thread.
+ */
+public class ParallelSerializationTestCase {
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        final UrlUtil.ServletUrlRegistry registry = new UrlUtil.ServletUrlRegistry();
+        final TopologyConfig topology = TopologyConfig.createBuilder()
+                .setServers(2)
+                .setJvmsPerServer(2)
+                .setApplications(3)
+                .setModulesPerApplication(2)
+                .setBeansPerModule(3)
+                .setServletsPerModule(2)
+                .setResources(2)
+                .build();
+        final ExampleGenerator generator = new ExampleGenerator(UrlUtil.Factory.createServletInstance(registry), topology);
+        //The same instances get serialized both times, so that the start times of their statistics are the same too
+        final ResourceInstance root = generator.createInstanceBuilders().build();
+
+        root.serialize();
+        registry.publish();
+        final Map<String, String> documents = getDocuments(registry);
+        final Map<String, String> collections = getCollections(registry);
+        Assert.assertFalse(documents.isEmpty());
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            root.serialize(pool);
+        } finally {
+            pool.shutdown();
+        }
+        registry.publish();
+        Assert.assertEquals(documents, getDocuments(registry));
+        Assert.assertEquals(collections, getCollections(registry));
+    }
+
+    private static Map<String, String> getDocuments(UrlUtil.ServletUrlRegistry registry) {
+        final Map<String, String> documents = new HashMap<>();
+        for (String path : registry.getPublishedDocumentPaths()) {
+            documents.put(path, toString(registry.getDocument(path)));
+        }
+        return documents;
+    }
+
+    private static Map<String, String> getCollections(UrlUtil.ServletUrlRegistry registry) {
+        final Map<String, String> collections = new HashMap<>();
+        for (String path : registry.getPublishedCollectionPaths()) {
+            collections.put(path, toString(registry.getCollection(path)));
+        }
+        return collections;
+    }
+
+    private static String toString(Document document) {
+        //Compared as strings so that a mismatch shows which document differs and how
+        return new String(document.getJson(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks recording into and reading from the tiers of a {@link History}, and how {@link History#createQuery} picks
+ * the tier and the samples for a period.
+ */
+public class HistoryTestCase {
+    //The seconds per bucket and the number of buckets of each tier
+    private static final int[] RESOLUTIONS = {1, 60, 600};
+    private static final int[] SLOTS = {300, 60, 144};
+
+    //A multiple of the resolution of every tier, in seconds since the epoch
+    private static final long START = 1_500_000_000L / 600 * 600;
+    private static final long NOW = START * 1000;
+
+    @Test
+    public void testReadEachTier() {
+        final History history = new History(2);
+        //Two minutes and a bit, recording the second as the first value
+        for (long second = START; second < START + 130; second++) {
+            record(history, second);
+        }
+        //The finest tier has every second
+        assertRead(history, 0, START, START);
+        assertRead(history, 0, START + 59, START + 59);
+        assertRead(history, 0, START + 129, START + 129);
+        //The others have the last sample taken in each of their buckets
+        assertRead(history, 1, START, START + 59);
+        assertRead(history, 1, START + 60, START + 119);
+        assertRead(history, 1, START + 125, START + 129);
+        assertRead(history, 2, START + 10, START + 129);
+        //Nothing was recorded before the start
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            Assert.assertFalse(history.read(tier, START - 1, new long[2]));
+        }
+    }
+
+    @Test
+    public void testReadSkippedBuckets() {
+        final History history = new History(1);
+        record(history, START);
+        record(history, START + 5);
+        //The sampler fell behind, so the last sample at or before the time is returned
+        assertRead(history, 0, START + 3, START);
+        assertRead(history, 0, START + 5, START + 5);
+        assertRead(history, 0, START + 200, START + 5);
+    }
+
+    @Test
+    public void testWrapAround() {
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            final long length = (long) RESOLUTIONS[tier] * SLOTS[tier];
+            final History history = new History(1);
+            //One sample per bucket, for one bucket more than the tier has
+            for (long second = START; second <= START + length; second += RESOLUTIONS[tier]) {
+                record(history, second);
+            }
+            //The first bucket has been overwritten by the last one, which shares its slot
+            Assert.assertFalse("tier " + tier, history.read(tier, START, new long[1]));
+            assertRead(history, tier, START + RESOLUTIONS[tier], START + RESOLUTIONS[tier]);
+            assertRead(history, tier, START + length, START + length);
+            //Looking back from further on than the ring covers finds nothing either
+            Assert.assertFalse("tier " + tier, history.read(tier, START + 3 * length, new long[1]));
+        }
+    }
+
+    @Test
+    public void testTierChoice() {
+        //Each tier is used for periods going back up to its length, to the millisecond
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            final long length = (long) RESOLUTIONS[tier] * SLOTS[tier] * 1000;
+            Assert.assertEquals(RESOLUTIONS[tier], History.createQuery(NOW, NOW - length, NOW, 0).getResolution());
+            if (tier < RESOLUTIONS.length - 1) {
+                Assert.assertEquals(RESOLUTIONS[tier + 1],
+                        History.createQuery(NOW, NOW - length - 1, NOW, 0).getResolution());
+            }
+        }
+        //The coarsest tier is used for anything going back further
+        Assert.assertEquals(600, History.createQuery(NOW, 0, NOW, 0).getResolution());
+        //It goes by how far back the period starts rather than its length
+        Assert.assertEquals(60, History.createQuery(NOW, NOW - 400_000, NOW - 390_000, 0).getResolution());
+        //A 'now' part way through a second does not push a period of exactly a tier's length to the next tier
+        Assert.assertEquals(1, History.createQuery(NOW + 500, NOW + 500 - 300_000, NOW + 500, 0).getResolution());
+    }
+
+    @Test
+    public void testSamples() {
+        //The first sample is the oldest one the tier still has
+        assertQuery(History.createQuery(NOW, NOW - 300_000, NOW, 0), 1, START - 299, 300);
+        assertQuery(History.createQuery(NOW, NOW - 3_600_000, NOW, 0), 60, START - 59 * 60, 60);
+        assertQuery(History.createQuery(NOW, 0, NOW, 0), 600, START - 143 * 600, 144);
+        //Within the tier the period is as asked for, with 'from' rounded up to a second
+        assertQuery(History.createQuery(NOW, NOW - 10_500, NOW - 1_000, 0), 1, START - 10, 10);
+        //Nothing after now
+        assertQuery(History.createQuery(NOW, NOW - 10_000, NOW + 60_000, 0), 1, START - 10, 11);
+        //A period in the future, or one within a single second which does not start on it, has no samples
+        Assert.assertEquals(0, History.createQuery(NOW, NOW + 1_000, NOW + 2_000, 0).getCount());
+        Assert.assertEquals(0, History.createQuery(NOW, NOW - 1_900, NOW - 1_100, 0).getCount());
+    }
+
+    @Test
+    public void testStep() {
+        //The samples start on a multiple of the step, so asking again later returns the same times
+        final History.Query query = History.createQuery(NOW + 3_000, NOW - 100_000, NOW + 3_000, 7);
+        Assert.assertEquals(7, query.getStep());
+        Assert.assertEquals(0, query.getFirst() % 7);
+        Assert.assertTrue(query.getFirst() >= START - 100 && query.getFirst() < START - 100 + 7);
+        Assert.assertEquals(1, query.getResolution());
+
+        //A step finer than the resolution of the tier is the resolution
+        Assert.assertEquals(60, History.createQuery(NOW, NOW - 3_600_000, NOW, 1).getStep());
+        Assert.assertEquals(600, History.createQuery(NOW, 0, NOW, 0).getStep());
+
+        //Up to the length of the coarsest tier
+        final History.Query longest = History.createQuery(NOW, 0, NOW, History.MAX_STEP);
+        Assert.assertEquals(History.MAX_STEP, longest.getStep());
+        Assert.assertEquals(1, longest.getCount());
+        assertInvalid(NOW - 1_000, NOW, History.MAX_STEP + 1);
+        assertInvalid(NOW - 1_000, NOW, -1);
+    }
+
+    @Test
+    public void testSampleCap() {
+        //Each tier has fewer buckets than the cap, so a period is trimmed to what the tier covers rather than rejected
+        for (long step : new long[] {0, 1}) {
+            for (long from : new long[] {NOW - 300_000, NOW - 3_600_000, NOW - 86_400_000, 0}) {
+                final History.Query query = History.createQuery(NOW, from, NOW, step);
+                Assert.assertTrue(query.getCount() <= History.Query.MAX_SAMPLES);
+                Assert.assertTrue(query.getCount() > 0);
+            }
+        }
+        Assert.assertTrue(History.TOTAL_SLOTS <= History.Query.MAX_SAMPLES);
+    }
+
+    @Test
+    public void testInvalidPeriod() {
+        assertInvalid(NOW, NOW - 1, 0);
+    }
+
+    private static void record(History history, long second) {
+        history.record(second, new long[] {second, -second});
+    }
+
+    private static void assertRead(History history, int tier, long second, long expected) {
+        final long[] values = new long[2];
+        Assert.assertTrue("tier " + tier + " at " + second, history.read(tier, second, values));
+        Assert.assertEquals("tier " + tier + " at " + second, expected, values[0]);
+    }
+
+    private static void assertQuery(History.Query query, int resolution, long first, int count) {
+        Assert.assertEquals(resolution, query.getResolution());
+        Assert.assertEquals(resolution, query.getStep());
+        Assert.assertEquals(first, query.getFirst());
+        Assert.assertEquals(count, query.getCount());
+    }
+
+    private static void assertInvalid(long from, long to, long step) {
+        try {
+            History.createQuery(NOW, from, to, step);
+            Assert.fail("Expected the query from " + from + " to " + to + " with step " + step + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright ${year}, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.spec.jsr373.apiexample.resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.spec.jsr373.apiexample.ExampleGenerator;
+import org.jboss.spec.jsr373.apiexample.UrlUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the routes compiled from the templates created by the {@link ExampleGenerator}: the kind each url pattern
+ * resolves to, the ids taken from the path, and the paths which must not match anything.
+ */
+public class RouteTrieTestCase {
+    private static final String SERVLET =
+            "/domains/main/servers/one/deployed-objects/app.ear/modules/web.war/servlets/MyServlet";
+
+    private static RouteTrie routes;
+
+    @BeforeClass
+    public static void compile() throws Exception {
+        //The templates are global and can only be created once, which is why each test class runs in its own JVM
+        new ExampleGenerator(UrlUtil.Factory.createServletInstance(new UrlUtil.ServletUrlRegistry()));
+        routes = RouteTrie.compile(ResourceTemplate.getAllTemplates());
+    }
+
+    @Test
+    public void testTemplates() {
+        final RouteTrie.Match collection = match("/templates", RouteTrie.Kind.TEMPLATE_COLLECTION);
+        Assert.assertTrue(collection.getIdNames().isEmpty());
+
+        final RouteTrie.Match template = match("/templates/jvm", RouteTrie.Kind.TEMPLATE);
+        Assert.assertEquals(Arrays.asList("Jvm"), getTypeNames(template));
+        Assert.assertNull(template.getInstancePath());
+    }
+
+    @Test
+    public void testInstances() {
+        final RouteTrie.Match domain = match("/domains/main", RouteTrie.Kind.INSTANCE);
+        Assert.assertEquals(Arrays.asList("domain-id"), domain.getIdNames());
+        Assert.assertEquals("main", domain.getId("domain-id"));
+        Assert.assertEquals("/domains/main", domain.getInstancePath());
+        Assert.assertEquals(Arrays.asList("JEEDomain"), getTypeNames(domain));
+
+        final RouteTrie.Match jvm = match("/domains/main/servers/one/java-vms/two", RouteTrie.Kind.INSTANCE);
+        Assert.assertEquals(Arrays.asList("domain-id", "server-id", "java-vm-id"), jvm.getIdNames());
+        Assert.assertEquals("main", jvm.getId("domain-id"));
+        Assert.assertEquals("one", jvm.getId("server-id"));
+        Assert.assertEquals("two", jvm.getId("java-vm-id"));
+        Assert.assertNull(jvm.getId("module-id"));
+
+        //Servers may also be at the top level rather than under a domain
+        final RouteTrie.Match server = match("/servers/one", RouteTrie.Kind.INSTANCE);
+        Assert.assertEquals(Arrays.asList("server-id"), server.getIdNames());
+        Assert.assertEquals(Arrays.asList("JEEServer"), getTypeNames(server));
+
+        final RouteTrie.Match servlet = match(SERVLET, RouteTrie.Kind.INSTANCE);
+        Assert.assertEquals("app.ear", servlet.getId("deployed-object-id"));
+        Assert.assertEquals("web.war", servlet.getId("module-id"));
+        Assert.assertEquals("MyServlet", servlet.getId("servlet-id"));
+        Assert.assertEquals(Arrays.asList("Servlet"), getTypeNames(servlet));
+    }
+
+    @Test
+    public void testSharedCollection() {
+        //The deployed objects may be any of the applications or modules, so the path only narrows down the templates
+        final RouteTrie.Match deployed =
+                match("/domains/main/servers/one/deployed-objects/app.ear", RouteTrie.Kind.INSTANCE);
+        Assert.assertTrue(getTypeNames(deployed).containsAll(
+                Arrays.asList("JEEApplication", "AppClientModule", "WebModule", "EJBModule")));
+
+        final RouteTrie.Match ejbs =
+                match("/domains/main/servers/one/deployed-objects/ejb.jar/ejbs", RouteTrie.Kind.COLLECTION);
+        Assert.assertTrue(getTypeNames(ejbs).containsAll(
+                Arrays.asList("EntityBean", "MessageDrivenBean", "StatefulSessionBean", "StatelessSessionBean")));
+        Assert.assertEquals("ejb.jar", ejbs.getId("deployed-object-id"));
+    }
+
+    @Test
+    public void testCollections() {
+        match("/domains", RouteTrie.Kind.COLLECTION);
+        final RouteTrie.Match jvms = match("/domains/main/servers/one/java-vms", RouteTrie.Kind.COLLECTION);
+        Assert.assertEquals(Arrays.asList("domain-id", "server-id"), jvms.getIdNames());
+        Assert.assertEquals("one", jvms.getId("server-id"));
+        Assert.assertNull(jvms.getInstancePath());
+    }
+
+    @Test
+    public void testLiteralsBeforeIds() {
+        //The literals only count where the pattern has them, anywhere else the same name is an id
+        final RouteTrie.Match statistics = match("/domains/main/statistics", RouteTrie.Kind.STATISTICS);
+        Assert.assertEquals("/domains/main", statistics.getInstancePath());
+
+        final RouteTrie.Match server = match("/domains/main/servers/statistics", RouteTrie.Kind.INSTANCE);
+        Assert.assertEquals("statistics", server.getId("server-id"));
+
+        final RouteTrie.Match serverStatistics =
+                match("/domains/main/servers/statistics/statistics", RouteTrie.Kind.STATISTICS);
+        Assert.assertEquals("statistics", serverStatistics.getId("server-id"));
+        Assert.assertEquals("/domains/main/servers/statistics", serverStatistics.getInstancePath());
+
+        final RouteTrie.Match jvm =
+                match("/domains/main/servers/operations/java-vms/operations", RouteTrie.Kind.INSTANCE);
+        Assert.assertEquals("operations", jvm.getId("server-id"));
+        Assert.assertEquals("operations", jvm.getId("java-vm-id"));
+    }
+
+    @Test
+    public void testOperations() {
+        for (String operation : new String[] {"start", "start-recursive", "stop"}) {
+            final RouteTrie.Match match = match(SERVLET + "/operations/" + operation, RouteTrie.Kind.OPERATION);
+            Assert.assertEquals(operation, match.getOperation());
+            Assert.assertEquals(SERVLET, match.getInstancePath());
+            Assert.assertEquals("MyServlet", match.getId("servlet-id"));
+            Assert.assertNull(match.getStatisticsPath());
+        }
+        final RouteTrie.Match domain = match("/domains/main/operations/stop", RouteTrie.Kind.OPERATION);
+        Assert.assertEquals("/domains/main", domain.getInstancePath());
+    }
+
+    @Test
+    public void testStatistics() {
+        final RouteTrie.Match statistics = match(SERVLET + "/statistics", RouteTrie.Kind.STATISTICS);
+        Assert.assertEquals(SERVLET, statistics.getInstancePath());
+        Assert.assertEquals(SERVLET + "/statistics", statistics.getStatisticsPath());
+        Assert.assertNull(statistics.getOperation());
+        Assert.assertNull(statistics.getStatisticName());
+    }
+
+    @Test
+    public void testHistory() {
+        final RouteTrie.Match history = match(SERVLET + "/statistics/ServiceTime/history", RouteTrie.Kind.HISTORY);
+        Assert.assertEquals(SERVLET, history.getInstancePath());
+        Assert.assertEquals(SERVLET + "/statistics", history.getStatisticsPath());
+        Assert.assertEquals("ServiceTime", history.getStatisticName());
+        Assert.assertNull(history.getRolledUpType());
+        Assert.assertEquals("web.war", history.getId("module-id"));
+
+        final RouteTrie.Match rolledUp = match("/domains/main/servers/one/statistics/roll-ups/Servlet/ServiceTime/history",
+                RouteTrie.Kind.HISTORY);
+        Assert.assertEquals("/domains/main/servers/one", rolledUp.getInstancePath());
+        Assert.assertEquals("/domains/main/servers/one/statistics", rolledUp.getStatisticsPath());
+        Assert.assertEquals("Servlet", rolledUp.getRolledUpType());
+        Assert.assertEquals("ServiceTime", rolledUp.getStatisticName());
+    }
+
+    @Test
+    public void testNoMatch() {
+        for (String path : new String[] {
+                "",
+                "/unknown",
+                "/templates/unknown",
+                "/templates/jvm/more",
+                "/domains/main/unknown",
+                "/domains/main/servers/one/java-vms/two/more",
+                //Operations which do not exist, and the operations element on its own
+                SERVLET + "/operations/restart",
+                SERVLET + "/operations",
+                //Jvms have no statistics, and domains only have roll-ups
+                "/domains/main/servers/one/java-vms/two/statistics",
+                "/domains/main/statistics/ServiceTime/history",
+                //Servlets have no roll-ups
+                SERVLET + "/statistics/roll-ups/Servlet/ServiceTime/history",
+                //Incomplete history paths
+                SERVLET + "/statistics/ServiceTime",
+                "/domains/main/statistics/roll-ups",
+                "/domains/main/statistics/roll-ups/Servlet/ServiceTime",
+                "/domains/main/statistics/roll-ups/Servlet/ServiceTime/history/more"}) {
+            Assert.assertNull(path, routes.match(path));
+        }
+    }
+
+    private static RouteTrie.Match match(String path, RouteTrie.Kind kind) {
+        final RouteTrie.Match match = routes.match(path);
+        Assert.assertNotNull(path, match);
+        Assert.assertEquals(path, kind, match.getKind());
+        Assert.assertEquals(path, match.getPath());
+        return match;
+    }
+
+    private static List<String> getTypeNames(RouteTrie.Match match) {
+        final List<String> names = new ArrayList<>();
+        for (ResourceTemplate template : match.getTemplates()) {
+            names.add(template.getResourceTypeName());
+        }
+        return names;
+    }
+}